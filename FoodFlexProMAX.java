@@ -1,32 +1,165 @@
+package foodflex;
+
 import javax.swing.*;
+import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.text.NumberFormat;
 import java.util.*;
 import java.util.List;
 import java.util.Random;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+import javax.management.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import javax.swing.Timer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 
 public class FoodFlexProMAX {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--report")) {
+            int days = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+            long now = System.currentTimeMillis();
+            OrderAnalytics analytics = new OrderAnalytics(OrderHistory.getInstance(), 
+                now - TimeUnit.DAYS.toMillis(days), Long.MAX_VALUE);
+            analytics.refresh().print(System.out, new MenuManager(), 10);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--kitchen-sim")) {
+            simulateKitchen(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--dispatch-sim")) {
+            int riders = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+            int orders = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+            RiderDispatcher.simulate(riders, orders, new MenuManager().getRestaurants());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            seedFromHistory(openHistory());
+            startServer(args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--load-test")) {
+            int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+            int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+            try {
+                ApiServer.loadTest(requests, clients);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            System.exit(0); // Orders still cooking would otherwise keep the kitchen busy
+        }
+        
+        CompletableFuture<Void> seeded = seedFromHistory(openHistory());
+        
         SwingUtilities.invokeLater(() -> {
             FoodFlexGUI app = new FoodFlexGUI();
             app.setVisible(true);
+            seeded.thenRun(() -> SwingUtilities.invokeLater(app::updateBestSellers));
         });
     }
+    
+    // Past orders feed recommendations and best sellers in the background, for
+    // the window and the API alike; orders placed from here on are recorded as they happen
+    private static CompletableFuture<Void> seedFromHistory(OrderHistory history) {
+        long seedEnd = history.getRecordCount();
+        CompletableFuture<Void> seeded = new CompletableFuture<>();
+        Thread seeder = new Thread(() -> {
+            try {
+                CoOccurrenceRecommender.getInstance().seedFrom(history, seedEnd);
+                PopularityTracker.getInstance().seedFrom(history, seedEnd);
+            } finally {
+                seeded.complete(null);
+            }
+        }, "history-seed");
+        seeder.setDaemon(true);
+        seeder.start();
+        return seeded;
+    }
+    
+    // Only the modes that place orders open the history, so new order numbers continue after past ones;
+    // the simulations and the load test never touch order_history.* in the working directory
+    private static OrderHistory openHistory() {
+        OrderHistory history = OrderHistory.getInstance();
+        Order.continueAfter(history.getMaxOrderId());
+        return history;
+    }
+    
+    // --server [port]: the HTTP API without the window; runs until the process is stopped
+    private static void startServer(int port) {
+        try {
+            ApiServer api = new ApiServer(new OrderService(new MenuManager()), port);
+            api.start();
+            System.out.println("FoodFlex API listening on http://localhost:" + api.getPort() + "/api/ ("
+                + (api.isVirtualThreads() ? "virtual threads" : "thread pool") + ")");
+        } catch (IOException e) {
+            System.err.println("Could not start the API server: " + e.getMessage());
+        }
+    }
+    
+    // --kitchen-sim <restaurantId> [stations] [orders]: orders per hour for random 3-item orders
+    private static void simulateKitchen(String[] args) {
+        Restaurant restaurant = new MenuManager().findRestaurant(args[1]);
+        if (restaurant == null) {
+            System.err.println("Unknown restaurant " + args[1]);
+            return;
+        }
+        int stations = args.length > 2 ? Integer.parseInt(args[2]) : Kitchen.DEFAULT_STATIONS;
+        int orderCount = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        Random random = new Random(42);
+        List<Meal> menu = restaurant.getMenu();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            List<CartLine> lines = new ArrayList<>();
+            for (int k = 0; k < 3; k++) {
+                lines.add(new CartLine(menu.get(random.nextInt(menu.size())), 1));
+            }
+            orders.add(new Order(lines, restaurant));
+        }
+        System.out.printf("%s with %d stations: %.0f orders/hour%n", restaurant.getName(), stations,
+            Kitchen.simulateOrdersPerHour(orders, stations));
+    }
 }
 
 // ================== ENHANCED DARK THEME UI ==================
 class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
     private final MenuManager menuManager = new MenuManager();
-    private final Cart cart = new Cart();
+    private final OrderService orderService = new OrderService(menuManager);
+    private final OrderService.Session session = orderService.openPinnedSession(); // Held for the window's lifetime
+    private final Cart cart = session.getCart(); // Only touched from the EDT
     private Restaurant currentRestaurant;
+    private final Set<Integer> announcedOrders = new HashSet<>(); // Orders whose ready dialog was shown; EDT only
     
     // UI Components
     private JTabbedPane menuTabs;
-    private JList<Meal> cartList;
-    private DefaultListModel<Meal> cartModel = new DefaultListModel<>();
+    private JComboBox<Restaurant> restaurantCombo;
+    private JList<Meal> bestSellerList;
+    private JList<MenuEntry> searchList;
+    private JPanel searchPanel;
+    private MenuSearchIndex searchIndex; // Built on the first search
+    private JList<MenuEntry> filterList;
+    private MenuRangeIndex rangeIndex; // Built on the first filter
+    private Timer searchDebounce;
+    private final Map<MealCategory, JList<Meal>> menuLists = new EnumMap<>(MealCategory.class);
+    private JList<CartLine> cartList;
+    private final CartListModel cartModel = new CartListModel();
     private JProgressBar progressBar;
     private JLabel totalLabel;
     private JLabel restaurantLabel;
@@ -38,6 +171,10 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
     private final Color ACCENT = new Color(255, 105, 50);
     private final Color TEXT_WHITE = new Color(240, 240, 240);
     
+    // Order updates arrive from kitchen threads and are replayed here on the EDT
+    private final OrderEventBus orderEvents = new OrderEventBus(this);
+    private final OrderTrackingTableModel trackingModel = new OrderTrackingTableModel();
+    
     // Animation
     private Timer celebrationTimer;
     private JLabel celebrationLabel;
@@ -64,7 +201,7 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         restaurantLabel.setForeground(TEXT_WHITE);
         restaurantLabel.setFont(new Font("Arial", Font.BOLD, 14));
         
-        JComboBox<Restaurant> restaurantCombo = new JComboBox<>(menuManager.getRestaurants().toArray(new Restaurant[0]));
+        restaurantCombo = new JComboBox<>(menuManager.getRestaurants().toArray(new Restaurant[0]));
         restaurantCombo.setRenderer(new RestaurantRenderer());
         restaurantCombo.addActionListener(e -> {
             currentRestaurant = (Restaurant) restaurantCombo.getSelectedItem();
@@ -75,6 +212,26 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         restaurantPanel.add(restaurantLabel);
         restaurantPanel.add(restaurantCombo);
         
+        // Search as you type across every restaurant, once typing pauses
+        JLabel searchLabel = new JLabel("   🔎 Search all menus: ");
+        searchLabel.setForeground(TEXT_WHITE);
+        searchLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        JTextField searchField = new JTextField(20);
+        searchDebounce = new Timer(150, e -> runSearch(searchField.getText()));
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {}
+        });
+        restaurantPanel.add(searchLabel);
+        restaurantPanel.add(searchField);
+        
         // Set default restaurant
         currentRestaurant = menuManager.getRestaurants().get(0);
         restaurantLabel.setText("🏠 " + currentRestaurant.getName() + " (" + currentRestaurant.getCuisine() + ")");
@@ -83,6 +240,7 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         menuTabs = new JTabbedPane();
         menuTabs.setBackground(DARK_BG);
         menuTabs.setForeground(TEXT_WHITE);
+        buildMenuTabs();
         updateMenuForRestaurant();
 
         // ========== CART PANEL ==========
@@ -98,7 +256,10 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
 
         // Cart list with custom renderer
         cartList = new JList<>(cartModel);
-        cartList.setCellRenderer(new CartItemRenderer());
+        CartItemRenderer cartRenderer = new CartItemRenderer();
+        cartList.setCellRenderer(cartRenderer);
+        cartList.setFixedCellHeight(cartRenderer.getCellHeight());
+        cartList.setFixedCellWidth(200);
         cartList.setBackground(CARD_BG);
         cartList.setForeground(TEXT_WHITE);
         cartList.setSelectionBackground(ACCENT);
@@ -161,7 +322,30 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         progressBar.setForeground(ACCENT);
         progressBar.setBackground(CARD_BG);
         progressBar.setFont(new Font("Arial", Font.BOLD, 12));
-        statusPanel.add(progressBar);
+        statusPanel.add(progressBar, BorderLayout.NORTH);
+
+        // Every active order, one row each
+        JTable trackingTable = new JTable(trackingModel);
+        trackingTable.setBackground(CARD_BG);
+        trackingTable.setForeground(TEXT_WHITE);
+        trackingTable.setGridColor(DARK_BG);
+        trackingTable.setSelectionBackground(ACCENT);
+        trackingTable.setFillsViewportHeight(true);
+        trackingTable.setRowHeight(20);
+        JProgressBar cellBar = new JProgressBar(0, 100);
+        cellBar.setStringPainted(true);
+        cellBar.setForeground(ACCENT);
+        cellBar.setBackground(CARD_BG);
+        trackingTable.getColumnModel().getColumn(OrderTrackingTableModel.PROGRESS_COLUMN).setCellRenderer(
+            (table, value, isSelected, hasFocus, row, column) -> {
+                cellBar.setValue((Integer) value);
+                return cellBar;
+            });
+        JScrollPane trackingScroll = new JScrollPane(trackingTable);
+        trackingScroll.setBorder(BorderFactory.createEmptyBorder());
+        trackingScroll.getViewport().setBackground(CARD_BG);
+        trackingScroll.setPreferredSize(new Dimension(0, 140));
+        statusPanel.add(trackingScroll, BorderLayout.CENTER);
 
         // Celebration label (hidden by default)
         celebrationLabel = new JLabel("", JLabel.CENTER);
@@ -184,7 +368,7 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
             mainSplit, 
             statusPanel
         );
-        verticalSplit.setResizeWeight(0.8);
+        verticalSplit.setResizeWeight(0.7);
         verticalSplit.setDividerSize(3);
 
         mainPanel.add(restaurantPanel, BorderLayout.NORTH);
@@ -194,83 +378,149 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         add(mainPanel);
     }
 
-    private void updateMenuForRestaurant() {
-        menuTabs.removeAll();
-        
+    private void buildMenuTabs() {
         // Best Sellers Tab
-        JPanel bestSellersPanel = createBestSellersPanel();
-        menuTabs.addTab("🏆 Best Sellers", bestSellersPanel);
-        
-        // Starters Tab
-        JPanel startersPanel = createMenuPanel(Starter.class);
-        menuTabs.addTab("🍟 Starters", startersPanel);
+        bestSellerList = new JList<>();
+        menuTabs.addTab("🏆 Best Sellers", createMenuPanel(bestSellerList, 5));
         
-        // Main Courses Tab
-        JPanel mainCoursePanel = createMenuPanel(MainCourse.class);
-        menuTabs.addTab("🍗 Main Course", mainCoursePanel);
-        
-        // Desserts Tab
-        JPanel dessertsPanel = createMenuPanel(Dessert.class);
-        menuTabs.addTab("🍰 Desserts", dessertsPanel);
+        // One tab per category; the lists are reused when switching restaurants
+        for (MealCategory category : MealCategory.values()) {
+            JList<Meal> menuList = new JList<>();
+            menuLists.put(category, menuList);
+            menuTabs.addTab(category.getTabTitle(), createMenuPanel(menuList, 12));
+        }
         
-        // Beverages Tab
-        JPanel beveragesPanel = createMenuPanel(Beverage.class);
-        menuTabs.addTab("🥤 Beverages", beveragesPanel);
+        // Search results from every restaurant
+        searchList = new JList<>();
+        searchPanel = createEntryPanel(searchList);
+        menuTabs.addTab("🔎 Search", searchPanel);
         
-        revalidate();
-        repaint();
+        // Price, calorie and prep time filters across every restaurant
+        filterList = new JList<>();
+        JPanel filterPanel = createEntryPanel(filterList);
+        JPanel filterBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterBar.setBackground(DARK_BG);
+        JTextField maxPrice = new JTextField(5);
+        JTextField maxCalories = new JTextField(5);
+        JTextField maxPrep = new JTextField(3);
+        JComboBox<Object> categoryCombo = new JComboBox<>();
+        categoryCombo.addItem("Any category");
+        for (MealCategory category : MealCategory.values()) {
+            categoryCombo.addItem(category);
+        }
+        JButton applyBtn = new JButton("🎯 Apply");
+        styleButton(applyBtn, ACCENT);
+        applyBtn.addActionListener(e -> runFilter(maxPrice.getText(), maxCalories.getText(), maxPrep.getText(),
+            categoryCombo.getSelectedItem()));
+        String[] labels = {"Max ₹", "Max cal", "Max prep s"};
+        JTextField[] fields = {maxPrice, maxCalories, maxPrep};
+        for (int i = 0; i < labels.length; i++) {
+            JLabel label = new JLabel(labels[i]);
+            label.setForeground(TEXT_WHITE);
+            filterBar.add(label);
+            filterBar.add(fields[i]);
+        }
+        filterBar.add(categoryCombo);
+        filterBar.add(applyBtn);
+        filterPanel.add(filterBar, BorderLayout.NORTH);
+        menuTabs.addTab("🎯 Filter", filterPanel);
     }
-
-    private JPanel createBestSellersPanel() {
+    
+    private JPanel createEntryPanel(JList<MenuEntry> entryList) {
+        SearchResultRenderer renderer = new SearchResultRenderer();
+        entryList.setCellRenderer(renderer);
+        entryList.setFixedCellHeight(renderer.getCellHeight());
+        entryList.setFixedCellWidth(200);
+        entryList.setBackground(CARD_BG);
+        entryList.setSelectionBackground(ACCENT);
+        entryList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        entryList.setVisibleRowCount(12);
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(DARK_BG);
-
-        // Get top 5 best sellers (sorted by price as a placeholder for popularity)
-        List<Meal> bestSellers = new ArrayList<>(currentRestaurant.getMenu());
-        bestSellers.sort((m1, m2) -> Double.compare(m2.getPrice(), m1.getPrice()));
-        bestSellers = bestSellers.subList(0, Math.min(5, bestSellers.size()));
-
-        DefaultListModel<Meal> model = new DefaultListModel<>();
-        bestSellers.forEach(model::addElement);
-
-        JList<Meal> bestSellerList = new JList<>(model);
-        bestSellerList.setCellRenderer(new MenuItemRenderer());
-        bestSellerList.setBackground(CARD_BG);
-        bestSellerList.setSelectionBackground(ACCENT);
-        bestSellerList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        bestSellerList.setVisibleRowCount(5);
-
-        JScrollPane scroll = new JScrollPane(bestSellerList);
+        JScrollPane scroll = new JScrollPane(entryList);
         scroll.setBorder(BorderFactory.createEmptyBorder());
         panel.add(scroll, BorderLayout.CENTER);
-
-        // Add to cart button
         JButton addBtn = new JButton("➕ ADD TO CART");
         styleButton(addBtn, new Color(70, 180, 80));
-        addBtn.addActionListener(e -> addToCart(bestSellerList));
+        addBtn.addActionListener(e -> addEntryToCart(entryList));
         panel.add(addBtn, BorderLayout.SOUTH);
-
         return panel;
     }
+    
+    // Blank fields leave that bound open
+    private void runFilter(String maxPrice, String maxCalories, String maxPrep, Object category) {
+        MenuFilter filter = new MenuFilter();
+        try {
+            if (!maxPrice.trim().isEmpty()) {
+                filter.price(0, Money.parse(maxPrice.trim()));
+            }
+            if (!maxCalories.trim().isEmpty()) {
+                filter.calories(0, Integer.parseInt(maxCalories.trim()));
+            }
+            if (!maxPrep.trim().isEmpty()) {
+                filter.prepSeconds(0, Integer.parseInt(maxPrep.trim()));
+            }
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this,
+                "Please enter numbers for the filter limits!",
+                "⚠️ Error",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        if (category instanceof MealCategory) {
+            filter.only((MealCategory) category);
+        }
+        if (rangeIndex == null) {
+            rangeIndex = MenuRangeIndex.build(menuManager);
+        }
+        filterList.setListData(rangeIndex.find(filter, MenuSearchIndex.MAX_RESULTS).toArray(new MenuEntry[0]));
+    }
+    
+    private void runSearch(String query) {
+        if (searchIndex == null) {
+            searchIndex = MenuSearchIndex.build(menuManager);
+        }
+        List<MenuEntry> results = searchIndex.search(query, MenuSearchIndex.MAX_RESULTS);
+        searchList.setListData(results.toArray(new MenuEntry[0]));
+        if (!query.trim().isEmpty()) {
+            menuTabs.setSelectedComponent(searchPanel);
+        }
+    }
+
+    private void updateMenuForRestaurant() {
+        updateBestSellers();
+        
+        for (MealCategory category : MealCategory.values()) {
+            menuLists.get(category).setModel(new MealListModel(currentRestaurant.getMeals(category)));
+        }
+    }
+
+    void updateBestSellers() {
+        // Top 5 by live order counts, topped up by price until enough has been sold
+        List<Meal> bestSellers = PopularityTracker.getInstance().getTopMeals(currentRestaurant, 5);
+        if (bestSellers.size() < 5) {
+            for (Meal meal : currentRestaurant.getPriciestMeals(5)) {
+                if (bestSellers.size() < 5 && !bestSellers.contains(meal)) {
+                    bestSellers.add(meal);
+                }
+            }
+        }
+        bestSellerList.setModel(new MealListModel(bestSellers));
+    }
 
-    private JPanel createMenuPanel(Class<?> mealClass) {
+    private JPanel createMenuPanel(JList<Meal> menuList, int visibleRows) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(DARK_BG);
 
-        // Menu items list
-        DefaultListModel<Meal> model = new DefaultListModel<>();
-        model.ensureCapacity(30); // Pre-allocate space for better performance
-        
-        currentRestaurant.getMenu().stream()
-            .filter(item -> mealClass.isInstance(item))
-            .forEach(model::addElement);
-
-        JList<Meal> menuList = new JList<>(model);
-        menuList.setCellRenderer(new MenuItemRenderer());
+        // Fixed cell sizes stop JList from measuring every row when the model changes
+        MenuItemRenderer renderer = new MenuItemRenderer();
+        menuList.setCellRenderer(renderer);
+        menuList.setFixedCellHeight(renderer.getCellHeight());
+        menuList.setFixedCellWidth(200);
         menuList.setBackground(CARD_BG);
         menuList.setSelectionBackground(ACCENT);
         menuList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        menuList.setVisibleRowCount(12);
+        menuList.setVisibleRowCount(visibleRows);
 
         JScrollPane scroll = new JScrollPane(menuList);
         scroll.setBorder(BorderFactory.createEmptyBorder());
@@ -294,11 +544,41 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
     }
 
     private void addToCart(JList<Meal> sourceList) {
-        Meal selected = sourceList.getSelectedValue();
+        addToCart(sourceList.getSelectedValue());
+    }
+    
+    // The cart belongs to the current restaurant, so a result from another one switches to it first
+    private void addEntryToCart(JList<MenuEntry> sourceList) {
+        MenuEntry entry = sourceList.getSelectedValue();
+        if (entry != null) {
+            if (!cart.isEmpty() && session.getRestaurant() != entry.getRestaurant()) {
+                // The cart belongs to one restaurant, so starting on another means emptying it
+                int choice = JOptionPane.showConfirmDialog(this,
+                    "Your cart has items from " + session.getRestaurant().getName() + ".\n" +
+                    "Clear it and start an order from " + entry.getRestaurant().getName() + "?",
+                    "🛒 Switch Restaurant",
+                    JOptionPane.YES_NO_OPTION);
+                if (choice != JOptionPane.YES_OPTION) {
+                    return;
+                }
+                int lineCount = cart.getLineCount();
+                session.clearCart();
+                cartModel.cleared(lineCount);
+                updateCartDetails();
+            }
+            if (entry.getRestaurant() != currentRestaurant) {
+                restaurantCombo.setSelectedItem(entry.getRestaurant());
+            }
+            addToCart(entry.getMeal());
+        }
+    }
+    
+    private void addToCart(Meal selected) {
         if (selected != null) {
             try {
-                cart.addItem(selected);
-                cartModel.addElement(selected);
+                boolean newLine = !cart.contains(selected);
+                session.addItem(currentRestaurant, selected);
+                cartModel.lineChanged(cart.indexOf(selected), newLine);
                 updateCartDetails();
                 
                 // Visual feedback
@@ -316,10 +596,12 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
     }
 
     private void removeFromCart() {
-        Meal selected = cartList.getSelectedValue();
-        if (selected != null) {
-            cart.removeItem(selected);
-            cartModel.removeElement(selected);
+        CartLine line = cartList.getSelectedValue();
+        if (line != null) {
+            Meal selected = line.getMeal();
+            int index = cart.indexOf(selected);
+            session.removeItem(selected);
+            cartModel.lineRemovedOrChanged(index, !cart.contains(selected));
             updateCartDetails();
             
             JOptionPane.showMessageDialog(this,
@@ -335,37 +617,42 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
     }
 
     private void updateCartDetails() {
-        NumberFormat rupee = NumberFormat.getCurrencyInstance(new Locale("en", "IN"));
-        double total = cart.getTotalPrice() + currentRestaurant.getDeliveryFee();
-        totalLabel.setText("Total: " + rupee.format(total) + 
-                         " (Delivery: " + rupee.format(currentRestaurant.getDeliveryFee()) + ")");
+        // The fee is the cart's restaurant's, whichever menu is being browsed
+        Restaurant cartRestaurant = session.getRestaurant();
+        long fee = cartRestaurant == null ? 0 : cartRestaurant.getDeliveryFeePaise();
+        long total = Money.add(cart.getTotalPaise(), fee);
+        totalLabel.setText("Total: " + Money.format(total) + 
+                         " (Delivery: " + Money.format(fee) + ")");
         
-        int totalCalories = cart.getItems().stream().mapToInt(Meal::getCalories).sum();
-        calorieLabel.setText("🔥 Total Calories: " + totalCalories);
+        calorieLabel.setText("🔥 Total Calories: " + cart.getTotalCalories());
     }
 
     private void placeOrder() {
-        if (cart.isEmpty()) {
+        int lineCount = cart.getLineCount();
+        Order order;
+        try {
+            // Creates, saves and starts the order from the restaurant the cart was filled at
+            order = session.placeOrder(session.getRestaurant(), orderEvents);
+        } catch (EmptyCartException ex) {
             JOptionPane.showMessageDialog(this, 
                 "Your cart is empty! Add some delicious items first.", 
                 "🛒 Empty Cart", 
                 JOptionPane.WARNING_MESSAGE);
             return;
+        } catch (ItemUnavailableException ex) {
+            JOptionPane.showMessageDialog(this, 
+                ex.getMessage(), 
+                "⚠️ Error", 
+                JOptionPane.ERROR_MESSAGE);
+            return;
         }
         
         // Start celebration animation
         startCelebration();
         
-        // Create and process order
-        Order order = new Order(cart.getItems(), currentRestaurant);
-        new OrderProcessor(order, this).start();
-        
-        // Save to order history
-        saveOrderToHistory(order);
-        
-        // Clear cart
-        cart.clear();
-        cartModel.clear();
+        trackingModel.orderUpdated(order, 0);
+        updateBestSellers();
+        cartModel.cleared(lineCount);
         updateCartDetails();
     }
 
@@ -381,17 +668,6 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
         celebrationTimer.start();
     }
 
-    private void saveOrderToHistory(Order order) {
-        try (FileWriter fw = new FileWriter("order_history.txt", true)) {
-            fw.write("Order #" + order.getOrderId() + 
-                     " | Restaurant: " + order.getRestaurant().getName() +
-                     " | Total: ₹" + String.format("%.2f", order.getTotalPrice()) +
-                     " | Time: " + new Date() + "\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     private void showAIRecommendations() {
         if (cart.isEmpty()) {
             JOptionPane.showMessageDialog(this,
@@ -401,183 +677,534 @@ class FoodFlexGUI extends JFrame implements OrderProcessor.OrderUpdateListener {
             return;
         }
         
-        // Simple AI logic based on cart items
-        String recommendation;
-        if (cart.getItems().stream().anyMatch(m -> m instanceof MainCourse)) {
-            recommendation = "Try our Masala Lemonade with your meal!";
-        } else if (cart.getItems().stream().anyMatch(m -> m instanceof Dessert)) {
-            recommendation = "How about a hot Masala Chai to go with your sweets?";
-        } else {
-            recommendation = "Our Butter Chicken is today's special!";
+        // Meals most often ordered together with the cart's, falling back to best sellers
+        List<Meal> cartMeals = new ArrayList<>(cart.getLineCount());
+        for (CartLine line : cart.getLines()) {
+            cartMeals.add(line.getMeal());
+        }
+        List<Meal> picks = CoOccurrenceRecommender.getInstance().recommend(cartMeals, currentRestaurant, 3);
+        String basis = "🍽️ Often ordered with your current cart items";
+        if (picks.isEmpty()) {
+            basis = "🍽️ Popular at " + currentRestaurant.getName();
+            for (Meal meal : PopularityTracker.getInstance().getTopMeals(currentRestaurant, 5)) {
+                if (picks.size() < 3 && !cart.contains(meal) && meal.isAvailable()) {
+                    picks.add(meal);
+                }
+            }
+        }
+        if (picks.isEmpty()) {
+            for (Meal meal : currentRestaurant.getPriciestMeals(5)) {
+                if (picks.size() < 3 && !cart.contains(meal) && meal.isAvailable()) {
+                    picks.add(meal);
+                }
+            }
+        }
+        StringBuilder recommendation = new StringBuilder();
+        for (Meal meal : picks) {
+            recommendation.append("• ").append(meal.getName()).append(" - ");
+            Money.appendTo(recommendation, meal.getPricePaise());
+            recommendation.append('\n');
         }
         
         JOptionPane.showMessageDialog(this,
             "🤖 FoodFlex AI Recommends:\n\n" + recommendation +
-            "\n\n🍽️ Based on your current cart items",
+            "\n" + basis,
             "✨ Personalized Recommendation",
             JOptionPane.PLAIN_MESSAGE);
     }
 
     // ========== ORDER STATUS UPDATES ==========
+    // Delivered on the EDT by orderEvents, progress coalesced per frame
     @Override
     public void onOrderStarted(Order order) {
+        trackingModel.orderUpdated(order, 0);
         progressBar.setValue(0);
         progressBar.setString("👨‍🍳 Preparing order #" + order.getOrderId() + " at " + order.getRestaurant().getName());
     }
 
     @Override
     public void onOrderProgress(Order order, int progress) {
+        trackingModel.orderUpdated(order, progress);
         progressBar.setValue(progress);
         
-        // Simulate rider tracking at 50% progress
-        if (progress == 50) {
-            progressBar.setString("🛵 Rider picked up your order! ETA: 20 mins");
+        // Intermediate values may be coalesced away, so go by the order's current status
+        Rider rider = order.getRider();
+        if (rider != null) {
+            progressBar.setString("🛵 " + rider.getName() + " picked up your order! ETA: " + EtaEngine.formatRemaining(order));
+            announceReady(order);
+        } else if (order.getStatus() == Order.OrderStatus.READY) {
+            progressBar.setString("🔎 Finding a rider - ETA: " + EtaEngine.formatRemaining(order));
+        } else {
+            progressBar.setString(order.getStatus().getDisplayText() + " - ETA: " + EtaEngine.formatRemaining(order));
         }
     }
 
     @Override
     public void onOrderCompleted(Order order) {
+        trackingModel.orderUpdated(order, 100);
+        progressBar.setValue(100);
         progressBar.setString(order.getStatus().getDisplayText());
-        if (order.getStatus() == Order.OrderStatus.READY) {
-            progressBar.setValue(100);
-            // Show delivery partner info
-            String[] deliveryPartners = {"Rajesh (★★★★☆)", "Priya (★★★★★)", "Amit (★★★☆☆)", "Neha (★★★★☆)"};
-            String deliveryPartner = deliveryPartners[new Random().nextInt(deliveryPartners.length)];
-            
-            JOptionPane.showMessageDialog(this, 
-                "🎉 Order #" + order.getOrderId() + " is ready!\n" +
-                "Estimated delivery time: 20 mins\n" +
-                "Rider: " + deliveryPartner,
-                "✅ Order Complete", 
-                JOptionPane.INFORMATION_MESSAGE);
+        announceReady(order); // In case the pickup update was coalesced away
+        announcedOrders.remove(order.getOrderId());
+    }
+    
+    // Once per order, when it is ready and has a rider: who is bringing it and when it should arrive
+    private void announceReady(Order order) {
+        if (!announcedOrders.add(order.getOrderId())) {
+            return;
         }
+        Rider rider = order.getRider();
+        String deliveryPartner = rider == null ? "being assigned" : rider.getName() + " (" + rider.getStars() + ")";
+        String eta = order.getStatus() == Order.OrderStatus.DELIVERED ? "delivered" : EtaEngine.formatRemaining(order);
+        
+        // Shown after the current batch so a modal dialog does not hold up other orders' updates
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this, 
+            "🎉 Order #" + order.getOrderId() + " is ready!\n" +
+            "Estimated delivery time: " + eta + "\n" +
+            "Rider: " + deliveryPartner,
+            "✅ Order Complete", 
+            JOptionPane.INFORMATION_MESSAGE));
     }
 
-    // ========== CUSTOM RENDERERS ==========
-    class MenuItemRenderer extends DefaultListCellRenderer {
+    @Override
+    public void onBatchDelivered() {
+        trackingModel.fireRowChanges();
+    }
+
+    // Read-only view over a restaurant's precomputed meal list
+    static class MealListModel extends AbstractListModel<Meal> {
+        private final List<Meal> meals;
+        
+        MealListModel(List<Meal> meals) {
+            this.meals = meals;
+        }
+        
         @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, 
-                int index, boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            
-            if (value instanceof Meal) {
-                Meal meal = (Meal) value;
-                setText("<html><b>" + meal.getName() + "</b> - <font color='#FF6932'>" + 
-                       formatRupee(meal.getPrice()) + "</font><br>" +
-                       "<small>" + meal.getDescription() + "</small><br>" +
-                       "<font color='#AAAAAA' size='2'>🔥 " + meal.getCalories() + " cal</font></html>");
+        public int getSize() { return meals.size(); }
+        
+        @Override
+        public Meal getElementAt(int index) { return meals.get(index); }
+    }
+
+    // Cart rows read straight from the cart; only the touched row is repainted
+    class CartListModel extends AbstractListModel<CartLine> {
+        @Override
+        public int getSize() { return cart.getLineCount(); }
+        
+        @Override
+        public CartLine getElementAt(int index) { return cart.getLine(index); }
+        
+        void lineChanged(int index, boolean added) {
+            if (added) {
+                fireIntervalAdded(this, index, index);
+            } else {
+                fireContentsChanged(this, index, index);
+            }
+        }
+        
+        // A removed line is replaced by the cart's last line, so the last row goes away
+        void lineRemovedOrChanged(int index, boolean removed) {
+            if (removed) {
+                int last = cart.getLineCount();
+                fireIntervalRemoved(this, last, last);
+                if (index < last) {
+                    fireContentsChanged(this, index, index);
+                }
+            } else {
+                fireContentsChanged(this, index, index);
+            }
+        }
+        
+        void cleared(int previousSize) {
+            if (previousSize > 0) {
+                fireIntervalRemoved(this, 0, previousSize - 1);
             }
-            
-            setBackground(isSelected ? ACCENT : CARD_BG);
-            setForeground(TEXT_WHITE);
-            setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
-            
-            return this;
         }
     }
 
-    class CartItemRenderer extends DefaultListCellRenderer {
+    // ========== CUSTOM RENDERERS ==========
+    // Cells are painted directly from text cached per value, so scrolling
+    // neither formats strings nor parses HTML on each paint.
+    static final class CellText {
+        final String title, accent, detail, note;
+        final boolean dimmed;
+        int width = -1; // Measured lazily
+        
+        CellText(String title, String accent, String detail, String note, boolean dimmed) {
+            this.title = title;
+            this.accent = accent;
+            this.detail = detail;
+            this.note = note;
+            this.dimmed = dimmed;
+        }
+        
+        static CellText forMeal(Meal meal) {
+            return new CellText(meal.getName(), " - " + Money.format(meal.getPricePaise()),
+                meal.getDescription(), 
+                meal.isAvailable() ? "🔥 " + meal.getCalories() + " cal" : "🔥 " + meal.getCalories() + " cal | Currently unavailable",
+                !meal.isAvailable());
+        }
+        
+        static CellText forCartLine(CartLine line) {
+            return new CellText(line.getMeal().getName() + " × " + line.getQuantity(),
+                " - " + Money.format(line.getLinePaise()) + " (" + line.getLineCalories() + " cal)",
+                null, null, false);
+        }
+        
+        static CellText forSearchEntry(MenuEntry entry) {
+            Meal meal = entry.getMeal();
+            return new CellText(meal.getName(), " - " + Money.format(meal.getPricePaise()),
+                "🏠 " + entry.getRestaurant().getName() + " | " + meal.getDescription(),
+                meal.isAvailable() ? "🔥 " + meal.getCalories() + " cal" : "🔥 " + meal.getCalories() + " cal | Currently unavailable",
+                !meal.isAvailable());
+        }
+        
+        static CellText forRestaurant(Restaurant r) {
+            return new CellText(r.getName(), " (" + r.getCuisine() + ")",
+                "🛵 " + Money.format(r.getDeliveryFeePaise()) + " delivery | ★" + String.format("%.1f", r.getRating()),
+                null, false);
+        }
+    }
+
+    abstract class CachedTextRenderer<T> extends JComponent implements ListCellRenderer<Object> {
+        private static final int CACHE_SIZE = 4096;
+        private final Font titleFont = new Font("Arial", Font.BOLD, 13);
+        private final Font detailFont = new Font("Arial", Font.PLAIN, 11);
+        private final Font noteFont = new Font("Arial", Font.PLAIN, 10);
+        private final Color NOTE_GREY = new Color(170, 170, 170);
+        private final Map<T, CellText> cache = new LinkedHashMap<T, CellText>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<T, CellText> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+        private final Class<T> type;
+        private final int lines;
+        private final Insets padding;
+        private final Object textHints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+        private CellText current;
+        private boolean selected;
+        
+        CachedTextRenderer(Class<T> type, int lines, Insets padding) {
+            this.type = type;
+            this.lines = lines;
+            this.padding = padding;
+            setOpaque(true);
+        }
+        
+        protected abstract CellText render(T value);
+        
+        // Whether a cached entry no longer matches its value
+        protected boolean isStale(T value, CellText cached) { return false; }
+        
+        public int getCellHeight() {
+            int height = padding.top + padding.bottom + getFontMetrics(titleFont).getHeight();
+            if (lines > 1) {
+                height += getFontMetrics(detailFont).getHeight();
+            }
+            if (lines > 2) {
+                height += getFontMetrics(noteFont).getHeight();
+            }
+            return height;
+        }
+        
         @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, 
+        public Component getListCellRendererComponent(JList<?> list, Object value,
                 int index, boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            
-            if (value instanceof Meal) {
-                Meal meal = (Meal) value;
-                setText("<html><b>" + meal.getName() + "</b> - " + 
-                       formatRupee(meal.getPrice()) + " (" + meal.getCalories() + " cal)</html>");
+            if (type.isInstance(value)) {
+                T typed = type.cast(value);
+                CellText text = cache.get(typed);
+                if (text == null || isStale(typed, text)) {
+                    text = render(typed);
+                    cache.put(typed, text);
+                }
+                current = text;
+            } else {
+                current = new CellText(value == null ? "" : value.toString(), null, null, null, false);
             }
-            
-            setBackground(isSelected ? ACCENT : CARD_BG);
-            setForeground(TEXT_WHITE);
-            setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
-            
+            selected = isSelected;
             return this;
         }
-    }
-
-    class RestaurantRenderer extends DefaultListCellRenderer {
+        
         @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, 
-                int index, boolean isSelected, boolean cellHasFocus) {
-            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            
-            if (value instanceof Restaurant) {
-                Restaurant r = (Restaurant) value;
-                setText("<html><b>" + r.getName() + "</b> (" + r.getCuisine() + ")<br>" +
-                       "<small>🛵 " + formatRupee(r.getDeliveryFee()) + " delivery | ★" + 
-                       String.format("%.1f", r.getRating()) + "</small></html>");
+        public Dimension getPreferredSize() {
+            CellText text = current;
+            if (text != null && text.width < 0) {
+                int width = getFontMetrics(titleFont).stringWidth(text.title);
+                if (text.accent != null) {
+                    width += getFontMetrics(titleFont).stringWidth(text.accent);
+                }
+                if (text.detail != null) {
+                    width = Math.max(width, getFontMetrics(detailFont).stringWidth(text.detail));
+                }
+                if (text.note != null) {
+                    width = Math.max(width, getFontMetrics(noteFont).stringWidth(text.note));
+                }
+                text.width = width;
+            }
+            return new Dimension(padding.left + padding.right + (text == null ? 0 : text.width), getCellHeight());
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            if (textHints instanceof Map) {
+                g2.addRenderingHints((Map<?, ?>) textHints);
+            }
+            g2.setColor(selected ? ACCENT : CARD_BG);
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            CellText text = current;
+            if (text == null) {
+                return;
             }
             
-            setBackground(isSelected ? ACCENT : CARD_BG);
-            setForeground(TEXT_WHITE);
-            setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-            
-            return this;
+            int x = padding.left;
+            FontMetrics fm = g2.getFontMetrics(titleFont);
+            int y = padding.top + fm.getAscent();
+            g2.setFont(titleFont);
+            g2.setColor(text.dimmed ? NOTE_GREY : TEXT_WHITE);
+            g2.drawString(text.title, x, y);
+            if (text.accent != null) {
+                g2.setColor(selected ? TEXT_WHITE : ACCENT);
+                g2.drawString(text.accent, x + fm.stringWidth(text.title), y);
+            }
+            y += fm.getDescent();
+            if (text.detail != null) {
+                fm = g2.getFontMetrics(detailFont);
+                y += fm.getAscent();
+                g2.setFont(detailFont);
+                g2.setColor(TEXT_WHITE);
+                g2.drawString(text.detail, x, y);
+                y += fm.getDescent();
+            }
+            if (text.note != null) {
+                fm = g2.getFontMetrics(noteFont);
+                y += fm.getAscent();
+                g2.setFont(noteFont);
+                g2.setColor(NOTE_GREY);
+                g2.drawString(text.note, x, y);
+            }
+        }
+    }
+
+    class MenuItemRenderer extends CachedTextRenderer<Meal> {
+        MenuItemRenderer() {
+            super(Meal.class, 3, new Insets(5, 10, 5, 10));
+        }
+        
+        @Override
+        protected CellText render(Meal meal) {
+            return CellText.forMeal(meal);
+        }
+        
+        @Override
+        protected boolean isStale(Meal meal, CellText cached) {
+            return cached.dimmed == meal.isAvailable();
+        }
+    }
+
+    class SearchResultRenderer extends CachedTextRenderer<MenuEntry> {
+        SearchResultRenderer() {
+            super(MenuEntry.class, 3, new Insets(5, 10, 5, 10));
+        }
+        
+        // Entries are shared by every search, so the cache holds one text per meal
+        @Override
+        protected CellText render(MenuEntry entry) {
+            return CellText.forSearchEntry(entry);
+        }
+        
+        @Override
+        protected boolean isStale(MenuEntry entry, CellText cached) {
+            return cached.dimmed == entry.getMeal().isAvailable();
+        }
+    }
+
+    class CartItemRenderer extends CachedTextRenderer<CartLine> {
+        CartItemRenderer() {
+            super(CartLine.class, 1, new Insets(5, 10, 5, 10));
+        }
+        
+        // Cart lines are immutable and replaced on every quantity change, so entries never go stale
+        @Override
+        protected CellText render(CartLine line) {
+            return CellText.forCartLine(line);
         }
     }
 
-    private String formatRupee(double amount) {
-        return "₹" + String.format("%.2f", amount);
+    class RestaurantRenderer extends CachedTextRenderer<Restaurant> {
+        RestaurantRenderer() {
+            super(Restaurant.class, 2, new Insets(5, 5, 5, 5));
+        }
+        
+        @Override
+        protected CellText render(Restaurant r) {
+            return CellText.forRestaurant(r);
+        }
     }
 }
 
 // ================== ENHANCED FOOD ITEMS ==================
 abstract class Meal {
     private final String id, name;
-    private final double price;
+    private final long pricePaise;
     private final int prepTimeSeconds;
     private final int calories;
-    private boolean available;
+    private final int index; // Dense id from MealRegistry
+    private volatile boolean onMenu; // Offered by the restaurant; stock is tracked by Inventory
     private String description;
 
-    public Meal(String id, String name, double price, int prepTimeSeconds, 
+    public Meal(String id, String name, long pricePaise, int prepTimeSeconds, 
                boolean available, String description, int calories) {
         this.id = id;
         this.name = name;
-        this.price = price;
+        this.pricePaise = pricePaise;
         this.prepTimeSeconds = prepTimeSeconds;
-        this.available = available;
+        this.onMenu = available;
         this.description = description;
         this.calories = calories;
+        this.index = MealRegistry.getInstance().register(this);
     }
 
     public String getId() { return id; }
+    public int getIndex() { return index; }
     public String getName() { return name; }
-    public double getPrice() { return price; }
+    public long getPricePaise() { return pricePaise; }
     public int getPrepTimeSeconds() { return prepTimeSeconds; }
-    public boolean isAvailable() { return available; }
-    public void setAvailable(boolean available) { this.available = available; }
+    // On the menu and not sold out
+    public boolean isAvailable() { return onMenu && Inventory.getInstance().getAvailable(this) > 0; }
+    public boolean isOnMenu() { return onMenu; }
+    public void setAvailable(boolean available) {
+        if (onMenu != available) {
+            onMenu = available;
+            MenuPayloadCache.catalogChanged();
+        }
+    }
     public String getDescription() { return description; }
     public int getCalories() { return calories; }
+    public abstract MealCategory getCategory();
+}
+
+enum MealCategory {
+    STARTER("🍟 Starters"),
+    MAIN_COURSE("🍗 Main Course"),
+    DESSERT("🍰 Desserts"),
+    BEVERAGE("🥤 Beverages");
+    
+    private final String tabTitle;
+    
+    MealCategory(String tabTitle) {
+        this.tabTitle = tabTitle;
+    }
+    
+    public String getTabTitle() {
+        return tabTitle;
+    }
+}
+
+// Dense int ids for meal ids, so per-meal data can live in primitive arrays
+// and int-keyed maps. Ids are stable for the life of the process; meal ids
+// seen only in the order history get an index before their menu is loaded.
+final class MealRegistry {
+    private static final MealRegistry INSTANCE = new MealRegistry();
+    
+    private long[] keys = new long[1024]; // Packed meal id, 0 = empty
+    private int[] values = new int[1024];
+    private Meal[] meals = new Meal[512]; // Latest Meal object per index, null if never loaded
+    private int size;
+    
+    public static MealRegistry getInstance() { return INSTANCE; }
+    
+    synchronized int register(Meal meal) {
+        int index = indexOf(OrderHistory.packId(meal.getId()));
+        meals[index] = meal;
+        return index;
+    }
+    
+    public synchronized int indexOf(long packedId) {
+        int mask = keys.length - 1;
+        int slot = (int) ((packedId * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == packedId) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = packedId;
+        values[slot] = size;
+        if (size == meals.length) {
+            meals = Arrays.copyOf(meals, size * 2);
+        }
+        int index = size++;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return index;
+    }
+    
+    public synchronized Meal getMeal(int index) {
+        return index < size ? meals[index] : null;
+    }
+    
+    public synchronized int size() { return size; }
+    
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = (int) ((oldKeys[i] * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
 }
 
 class Starter extends Meal {
-    public Starter(String id, String name, double price, int prepTime, 
+    public Starter(String id, String name, long pricePaise, int prepTime, 
                   boolean available, String description, int calories) {
-        super(id, name, price, prepTime, available, "🍢 " + description, calories);
+        super(id, name, pricePaise, prepTime, available, "🍢 " + description, calories);
     }
+    
+    @Override
+    public MealCategory getCategory() { return MealCategory.STARTER; }
 }
 
 class MainCourse extends Meal {
-    public MainCourse(String id, String name, double price, int prepTime, 
+    public MainCourse(String id, String name, long pricePaise, int prepTime, 
                      boolean available, String description, int calories) {
-        super(id, name, price, prepTime, available, "🍛 " + description, calories);
+        super(id, name, pricePaise, prepTime, available, "🍛 " + description, calories);
     }
+    
+    @Override
+    public MealCategory getCategory() { return MealCategory.MAIN_COURSE; }
 }
 
 class Dessert extends Meal {
-    public Dessert(String id, String name, double price, int prepTime, 
+    public Dessert(String id, String name, long pricePaise, int prepTime, 
                   boolean available, String description, int calories) {
-        super(id, name, price, prepTime, available, "🍰 " + description, calories);
+        super(id, name, pricePaise, prepTime, available, "🍰 " + description, calories);
     }
+    
+    @Override
+    public MealCategory getCategory() { return MealCategory.DESSERT; }
 }
 
 class Beverage extends Meal {
-    public Beverage(String id, String name, double price, int prepTime, 
+    public Beverage(String id, String name, long pricePaise, int prepTime, 
                    boolean available, String description, int calories) {
-        super(id, name, price, prepTime, available, "🥤 " + description, calories);
+        super(id, name, pricePaise, prepTime, available, "🥤 " + description, calories);
     }
+    
+    @Override
+    public MealCategory getCategory() { return MealCategory.BEVERAGE; }
 }
 
 // ================== RESTAURANT CLASS ==================
@@ -585,746 +1212,4809 @@ class Restaurant {
     private final String id;
     private final String name;
     private final String cuisine;
-    private final double deliveryFee;
-    private final List<Meal> menu;
+    private final long deliveryFeePaise;
+    private final double x, y; // Location in km within the delivery area
+    private final File menuFile;
+    private final int index; // Position in the catalog, for compact references
+    private volatile List<Meal> menu; // Loaded from menuFile on first access
+    private Map<MealCategory, List<Meal>> mealsByCategory; // Built with menu, before it is published
+    private Map<String, Meal> mealsById;
+    private List<Meal> priciestFirst;
     private final double rating;
 
-    public Restaurant(String id, String name, String cuisine, double deliveryFee) {
+    public Restaurant(String id, String name, String cuisine, long deliveryFeePaise, double x, double y,
+                      File menuFile, int index) {
         this.id = id;
         this.name = name;
         this.cuisine = cuisine;
-        this.deliveryFee = deliveryFee;
-        this.menu = new ArrayList<>();
+        this.deliveryFeePaise = deliveryFeePaise;
+        this.x = x;
+        this.y = y;
+        this.menuFile = menuFile;
+        this.index = index;
         this.rating = 4.0 + new Random().nextDouble(); // Random rating 4.0-5.0
-        
-        initializeMenu();
     }
 
-    private void initializeMenu() {
-        switch (cuisine) {
-            case "Indian":
-                addIndianMenu();
-                break;
-            case "Italian":
-                addItalianMenu();
-                break;
-            case "Japanese":
-                addJapaneseMenu();
-                break;
-            case "American":
-                addAmericanMenu();
-                break;
-            case "Mexican":
-                addMexicanMenu();
-                break;
-            case "Chinese":
-                addChineseMenu();
-                break;
-            case "Mediterranean":
-                addMediterraneanMenu();
-                break;
-            case "BBQ":
-                addBBQMenu();
-                break;
-            case "French":
-                addFrenchMenu();
-                break;
+    public String getId() { return id; }
+    public int getIndex() { return index; }
+    public String getName() { return name; }
+    public String getCuisine() { return cuisine; }
+    public long getDeliveryFeePaise() { return deliveryFeePaise; }
+    public double getRating() { return rating; }
+    public double getX() { return x; }
+    public double getY() { return y; }
+    
+    public List<Meal> getMenu() {
+        List<Meal> loaded = menu;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = menu;
+                if (loaded == null) {
+                    loaded = Collections.unmodifiableList(MenuCatalog.loadMenu(menuFile));
+                    buildIndexes(loaded);
+                    menu = loaded;
+                }
+            }
         }
+        return loaded;
     }
-
-    private void addIndianMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST001", "Samosa", 49, 2, true, "Spiced potato filling", 150),
-            new Starter("ST002", "Paneer Tikka", 129, 3, true, "Grilled cottage cheese", 180),
-            new Starter("ST003", "Chicken 65", 149, 3, true, "Spicy fried chicken", 220),
-            new Starter("ST004", "Aloo Tikki", 79, 2, true, "Potato patties", 120),
-            new Starter("ST005", "Vegetable Pakora", 89, 3, true, "Fried vegetable fritters", 160),
-            new Starter("ST006", "Gobi Manchurian", 139, 3, true, "Crispy cauliflower", 200),
-            new Starter("ST007", "Fish Amritsari", 199, 4, true, "Punjabi style fish", 250),
-            new Starter("ST008", "Papdi Chaat", 99, 2, true, "Street style chaat", 180),
-            new Starter("ST009", "Dahi Puri", 119, 3, true, "Crispy puris with yogurt", 200),
-            new Starter("ST010", "Bhel Puri", 89, 2, true, "Puffed rice snack", 150),
-            
-            new MainCourse("MC001", "Butter Chicken", 349, 5, true, "Creamy tomato chicken", 450),
-            new MainCourse("MC002", "Palak Paneer", 279, 4, true, "Spinach with cottage cheese", 320),
-            new MainCourse("MC003", "Chana Masala", 229, 4, true, "Spiced chickpeas", 280),
-            new MainCourse("MC004", "Rogan Josh", 399, 6, true, "Kashmiri lamb curry", 500),
-            new MainCourse("MC005", "Dal Tadka", 199, 3, true, "Tempered lentils", 250),
-            new MainCourse("MC006", "Vegetable Biryani", 299, 5, true, "Fragrant rice with veggies", 380),
-            new MainCourse("MC007", "Chicken Tikka Masala", 329, 5, true, "Grilled chicken in gravy", 420),
-            new MainCourse("MC008", "Malai Kofta", 259, 4, true, "Vegetable balls in cream sauce", 350),
-            new MainCourse("MC009", "Fish Curry", 379, 5, true, "South Indian style fish", 400),
-            new MainCourse("MC010", "Prawn Masala", 429, 6, true, "Spicy prawn curry", 450),
-            new MainCourse("MC011", "Hyderabadi Biryani", 349, 6, true, "Fragrant rice with meat", 480),
-            new MainCourse("MC012", "Rajma Chawal", 229, 4, true, "Kidney beans with rice", 350),
-            new MainCourse("MC013", "Mutton Korma", 449, 7, true, "Rich mutton curry", 520),
-            new MainCourse("MC014", "Dosa", 159, 3, true, "South Indian crepe", 280),
-            new MainCourse("MC015", "Aloo Paratha", 129, 3, true, "Stuffed flatbread", 320),
-            new MainCourse("MC016", "Kadai Paneer", 299, 4, true, "Cottage cheese in spicy gravy", 380),
-            new MainCourse("MC017", "Baingan Bharta", 239, 4, true, "Smoked eggplant curry", 300),
-            new MainCourse("MC018", "Sambar Rice", 189, 3, true, "Lentil stew with rice", 350),
-            new MainCourse("MC019", "Pav Bhaji", 199, 4, true, "Spiced vegetable mash with bread", 400),
-            new MainCourse("MC020", "Keema Matar", 349, 5, true, "Minced meat with peas", 450),
-            
-            new Dessert("DS001", "Gulab Jamun", 99, 2, true, "Sweet milk balls", 250),
-            new Dessert("DS002", "Rasmalai", 119, 2, true, "Cottage cheese in milk", 220),
-            new Dessert("DS003", "Kheer", 89, 3, true, "Rice pudding", 180),
-            new Dessert("DS004", "Gajar Halwa", 129, 4, true, "Carrot pudding", 210),
-            new Dessert("DS005", "Jalebi", 69, 2, true, "Crispy sweet spirals", 280),
-            new Dessert("DS006", "Rasgulla", 79, 2, true, "Spongy cottage cheese balls", 190),
-            new Dessert("DS007", "Shrikhand", 109, 2, true, "Sweet strained yogurt", 170),
-            new Dessert("DS008", "Malpua", 119, 3, true, "Sweet pancake", 230),
-            new Dessert("DS009", "Besan Ladoo", 89, 2, true, "Chickpea flour sweets", 200),
-            new Dessert("DS010", "Peda", 99, 2, true, "Milk-based sweet", 180),
-            
-            new Beverage("BV001", "Mango Lassi", 79, 1, true, "Yogurt mango drink", 200),
-            new Beverage("BV002", "Masala Chai", 49, 2, true, "Spiced Indian tea", 80),
-            new Beverage("BV003", "Badam Milk", 89, 2, true, "Almond flavored milk", 180),
-            new Beverage("BV004", "Nimbu Pani", 39, 1, true, "Fresh lime water", 50),
-            new Beverage("BV005", "Thandai", 99, 3, true, "Festive nut milk", 220),
-            new Beverage("BV006", "Filter Coffee", 59, 2, true, "South Indian coffee", 60),
-            new Beverage("BV007", "Rose Milk", 69, 1, true, "Rose flavored milk", 150),
-            new Beverage("BV008", "Sugarcane Juice", 49, 1, true, "Fresh sugarcane", 120),
-            new Beverage("BV009", "Aam Panna", 79, 2, true, "Raw mango drink", 90),
-            new Beverage("BV010", "Paan Shots", 129, 3, true, "Digestive betel shot", 40),
-            new Beverage("BV011", "Cold Coffee", 89, 2, true, "Iced coffee drink", 150),
-            new Beverage("BV012", "Jaljeera", 59, 1, true, "Spiced cumin water", 30)
-        ));
-    }
-
-    private void addItalianMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST011", "Bruschetta", 199, 3, true, "Toasted bread with tomatoes", 180),
-            new Starter("ST012", "Caprese Salad", 229, 2, true, "Tomato mozzarella salad", 150),
-            new Starter("ST013", "Garlic Bread", 129, 2, true, "Freshly baked with garlic butter", 220),
-            new Starter("ST014", "Arancini", 179, 4, true, "Fried risotto balls", 250),
-            new Starter("ST015", "Prosciutto e Melone", 299, 3, true, "Ham with melon", 180),
-            new Starter("ST016", "Antipasto Platter", 349, 5, true, "Cured meats and cheeses", 320),
-            new Starter("ST017", "Calamari Fritti", 279, 4, true, "Fried squid", 230),
-            new Starter("ST018", "Mozzarella Sticks", 189, 3, true, "Fried cheese sticks", 280),
-            new Starter("ST019", "Stuffed Mushrooms", 219, 4, true, "Baked stuffed mushrooms", 200),
-            new Starter("ST020", "Focaccia Bread", 159, 3, true, "Italian flatbread", 250),
-            
-            new MainCourse("MC021", "Spaghetti Carbonara", 399, 6, true, "Creamy pasta with bacon", 550),
-            new MainCourse("MC022", "Margherita Pizza", 349, 5, true, "Classic tomato and cheese", 480),
-            new MainCourse("MC023", "Lasagna", 379, 7, true, "Layered pasta dish", 520),
-            new MainCourse("MC024", "Risotto ai Funghi", 329, 6, true, "Mushroom risotto", 420),
-            new MainCourse("MC025", "Chicken Parmigiana", 429, 7, true, "Breaded chicken with cheese", 580),
-            new MainCourse("MC026", "Fettuccine Alfredo", 359, 5, true, "Creamy pasta", 490),
-            new MainCourse("MC027", "Osso Buco", 499, 8, true, "Braised veal shanks", 620),
-            new MainCourse("MC028", "Eggplant Parmigiana", 299, 5, true, "Baked eggplant with cheese", 380),
-            new MainCourse("MC029", "Penne Arrabbiata", 279, 4, true, "Spicy tomato pasta", 350),
-            new MainCourse("MC030", "Gnocchi Sorrentina", 319, 5, true, "Potato dumplings with tomato", 400),
-            new MainCourse("MC031", "Veal Marsala", 459, 7, true, "Veal in mushroom wine sauce", 540),
-            new MainCourse("MC032", "Seafood Linguine", 479, 7, true, "Pasta with mixed seafood", 520),
-            new MainCourse("MC033", "Pizza Quattro Formaggi", 389, 6, true, "Four cheese pizza", 500),
-            new MainCourse("MC034", "Ravioli Spinaci", 339, 5, true, "Spinach stuffed pasta", 380),
-            new MainCourse("MC035", "Saltimbocca", 439, 6, true, "Roman style veal", 480),
-            new MainCourse("MC036", "Pizza Diavola", 369, 5, true, "Spicy salami pizza", 450),
-            new MainCourse("MC037", "Spaghetti Vongole", 419, 6, true, "Clam pasta", 400),
-            new MainCourse("MC038", "Pizza Capricciosa", 399, 6, true, "Assorted toppings pizza", 480),
-            new MainCourse("MC039", "Tagliatelle Bolognese", 379, 6, true, "Meat sauce pasta", 500),
-            new MainCourse("MC040", "Pizza Prosciutto", 389, 5, true, "Ham and mushroom pizza", 450),
-            
-            new Dessert("DS011", "Tiramisu", 169, 2, true, "Coffee-flavored dessert", 320),
-            new Dessert("DS012", "Panna Cotta", 149, 2, true, "Creamy Italian dessert", 280),
-            new Dessert("DS013", "Cannoli", 129, 2, true, "Crispy pastry tubes", 220),
-            new Dessert("DS014", "Gelato", 99, 1, true, "Italian ice cream", 180),
-            new Dessert("DS015", "Affogato", 119, 2, true, "Ice cream with espresso", 150),
-            new Dessert("DS016", "Zabaglione", 159, 3, true, "Egg custard dessert", 200),
-            new Dessert("DS017", "Panettone", 179, 2, true, "Italian sweet bread", 300),
-            new Dessert("DS018", "Sfogliatella", 139, 2, true, "Layered pastry", 240),
-            new Dessert("DS019", "Semifreddo", 149, 2, true, "Semi-frozen dessert", 220),
-            new Dessert("DS020", "Biscotti", 89, 1, true, "Italian almond cookies", 120),
-            
-            new Beverage("BV021", "Red Wine", 299, 1, true, "House special", 120),
-            new Beverage("BV022", "White Wine", 279, 1, true, "Chardonnay", 110),
-            new Beverage("BV023", "Limoncello", 199, 1, true, "Lemon liqueur", 80),
-            new Beverage("BV024", "Espresso", 69, 1, true, "Strong Italian coffee", 5),
-            new Beverage("BV025", "Cappuccino", 89, 2, true, "Espresso with milk foam", 120),
-            new Beverage("BV026", "Aperol Spritz", 229, 2, true, "Popular Italian cocktail", 150),
-            new Beverage("BV027", "Negroni", 249, 2, true, "Classic Italian cocktail", 130),
-            new Beverage("BV028", "San Pellegrino", 59, 1, true, "Sparkling water", 0),
-            new Beverage("BV029", "Italian Soda", 99, 1, true, "Fruit flavored soda", 140),
-            new Beverage("BV030", "Grappa", 179, 1, true, "Italian grape brandy", 90),
-            new Beverage("BV031", "Americano", 79, 1, true, "Espresso with hot water", 10),
-            new Beverage("BV032", "Macchiato", 89, 1, true, "Espresso with milk", 50)
-        ));
+    
+    public boolean isMenuLoaded() { return menu != null; }
+    
+    // Meals of one category in menu order; immutable and shared, so callers never copy or filter
+    public List<Meal> getMeals(MealCategory category) {
+        getMenu();
+        return mealsByCategory.get(category);
     }
-
-    private void addJapaneseMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST021", "Edamame", 129, 2, true, "Steamed soybeans", 120),
-            new Starter("ST022", "Miso Soup", 99, 2, true, "Traditional Japanese soup", 70),
-            new Starter("ST023", "Agedashi Tofu", 159, 3, true, "Fried tofu in broth", 180),
-            new Starter("ST024", "Gyoza", 179, 4, true, "Japanese dumplings", 200),
-            new Starter("ST025", "Takoyaki", 199, 4, true, "Octopus balls", 220),
-            new Starter("ST026", "Sunomono", 139, 2, true, "Cucumber salad", 90),
-            new Starter("ST027", "Ebi Tempura", 239, 4, true, "Fried shrimp", 250),
-            new Starter("ST028", "Yakitori", 189, 3, true, "Grilled chicken skewers", 180),
-            new Starter("ST029", "Sashimi Appetizer", 299, 3, true, "Assorted raw fish slices", 150),
-            new Starter("ST030", "Chawanmushi", 179, 3, true, "Savory egg custard", 130),
-            
-            new MainCourse("MC041", "California Roll", 349, 4, true, "Crab avocado roll", 320),
-            new MainCourse("MC042", "Spicy Tuna Roll", 379, 4, true, "Tuna with spicy mayo", 350),
-            new MainCourse("MC043", "Chicken Teriyaki", 329, 5, true, "Grilled chicken with sauce", 380),
-            new MainCourse("MC044", "Beef Yakiniku", 429, 6, true, "Grilled beef", 450),
-            new MainCourse("MC045", "Tonkatsu", 359, 5, true, "Breaded pork cutlet", 420),
-            new MainCourse("MC046", "Ramen", 299, 4, true, "Japanese noodle soup", 480),
-            new MainCourse("MC047", "Udon", 279, 4, true, "Thick wheat noodles", 400),
-            new MainCourse("MC048", "Sashimi Platter", 499, 5, true, "Assorted raw fish", 350),
-            new MainCourse("MC049", "Unagi Don", 399, 5, true, "Eel rice bowl", 450),
-            new MainCourse("MC050", "Okonomiyaki", 329, 6, true, "Japanese savory pancake", 380),
-            new MainCourse("MC051", "Sukiyaki", 459, 7, true, "Hot pot with beef", 520),
-            new MainCourse("MC052", "Tempura Udon", 349, 5, true, "Noodles with tempura", 450),
-            new MainCourse("MC053", "Chirashi Bowl", 379, 5, true, "Scattered sushi bowl", 400),
-            new MainCourse("MC054", "Katsu Curry", 359, 5, true, "Cutlet with curry", 480),
-            new MainCourse("MC055", "Yakisoba", 299, 4, true, "Stir-fried noodles", 350),
-            new MainCourse("MC056", "Dragon Roll", 419, 5, true, "Eel and cucumber roll", 380),
-            new MainCourse("MC057", "Rainbow Roll", 399, 5, true, "Assorted fish roll", 360),
-            new MainCourse("MC058", "Beef Sukiyaki Don", 389, 6, true, "Beef hot pot rice bowl", 450),
-            new MainCourse("MC059", "Salmon Teriyaki", 349, 5, true, "Grilled salmon with sauce", 400),
-            new MainCourse("MC060", "Vegetable Tempura", 279, 4, true, "Assorted fried vegetables", 320),
-            
-            new Dessert("DS021", "Mochi Ice Cream", 149, 2, true, "Rice cake with ice cream", 180),
-            new Dessert("DS022", "Matcha Tiramisu", 169, 2, true, "Green tea flavored dessert", 220),
-            new Dessert("DS023", "Dorayaki", 129, 2, true, "Red bean pancake", 200),
-            new Dessert("DS024", "Taiyaki", 119, 2, true, "Fish-shaped cake", 180),
-            new Dessert("DS025", "Matcha Parfait", 179, 3, true, "Green tea sundae", 250),
-            new Dessert("DS026", "Anmitsu", 159, 3, true, "Agar jelly dessert", 200),
-            new Dessert("DS027", "Warabi Mochi", 139, 2, true, "Jelly-like confection", 160),
-            new Dessert("DS028", "Castella", 149, 2, true, "Japanese sponge cake", 220),
-            new Dessert("DS029", "Yokan", 129, 2, true, "Red bean jelly", 150),
-            new Dessert("DS030", "Zenzai", 139, 3, true, "Sweet red bean soup", 180),
-            
-            new Beverage("BV041", "Matcha Latte", 129, 2, true, "Green tea with milk", 120),
-            new Beverage("BV042", "Sake", 199, 1, true, "Japanese rice wine", 150),
-            new Beverage("BV043", "Umeshu", 179, 1, true, "Plum wine", 130),
-            new Beverage("BV044", "Ramune", 99, 1, true, "Japanese soda", 140),
-            new Beverage("BV045", "Hojicha Tea", 89, 1, true, "Roasted green tea", 10),
-            new Beverage("BV046", "Genmaicha Tea", 89, 1, true, "Brown rice tea", 10),
-            new Beverage("BV047", "Calpico", 109, 1, true, "Japanese soft drink", 110),
-            new Beverage("BV048", "Melon Soda", 119, 1, true, "Green melon flavored", 130),
-            new Beverage("BV049", "Shiso Juice", 99, 1, true, "Perilla leaf drink", 50),
-            new Beverage("BV050", "Yuzu Tea", 109, 1, true, "Citrus herbal tea", 30),
-            new Beverage("BV051", "Cold Brew Tea", 99, 1, true, "Iced green tea", 5),
-            new Beverage("BV052", "Shochu", 219, 1, true, "Japanese distilled beverage", 120)
-        ));
+    
+    public List<Meal> getPriciestMeals(int limit) {
+        getMenu();
+        return priciestFirst.subList(0, Math.min(limit, priciestFirst.size()));
     }
-
-    private void addAmericanMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST031", "Buffalo Wings", 249, 4, true, "Spicy chicken wings", 350),
-            new Starter("ST032", "Mozzarella Sticks", 189, 3, true, "Fried cheese sticks", 280),
-            new Starter("ST033", "Nachos", 219, 3, true, "Tortilla chips with toppings", 400),
-            new Starter("ST034", "Onion Rings", 179, 3, true, "Fried onion rings", 320),
-            new Starter("ST035", "Spinach Artichoke Dip", 199, 4, true, "Creamy dip with chips", 380),
-            new Starter("ST036", "Chicken Quesadilla", 229, 4, true, "Grilled chicken and cheese", 420),
-            new Starter("ST037", "Potato Skins", 209, 4, true, "Loaded potato halves", 350),
-            new Starter("ST038", "Bacon Cheese Fries", 239, 4, true, "Fries with bacon and cheese", 450),
-            new Starter("ST039", "Clam Chowder", 189, 3, true, "Creamy seafood soup", 280),
-            new Starter("ST040", "Fried Pickles", 159, 3, true, "Battered fried pickles", 250),
-            
-            new MainCourse("MC061", "Cheeseburger", 299, 5, true, "Classic beef burger", 550),
-            new MainCourse("MC062", "BBQ Ribs", 449, 6, true, "Slow-cooked pork ribs", 680),
-            new MainCourse("MC063", "Fried Chicken", 329, 5, true, "Southern style chicken", 600),
-            new MainCourse("MC064", "Philly Cheesesteak", 379, 5, true, "Beef sandwich with cheese", 520),
-            new MainCourse("MC065", "Mac & Cheese", 259, 4, true, "Creamy pasta dish", 450),
-            new MainCourse("MC066", "Club Sandwich", 279, 4, true, "Triple-decker sandwich", 480),
-            new MainCourse("MC067", "Steak", 599, 7, true, "Grilled beef steak", 700),
-            new MainCourse("MC068", "Hot Dog", 199, 3, true, "Classic American hot dog", 350),
-            new MainCourse("MC069", "Chicken Pot Pie", 329, 5, true, "Creamy chicken in pastry", 500),
-            new MainCourse("MC070", "Meatloaf", 279, 5, true, "Homestyle meatloaf", 480),
-            new MainCourse("MC071", "Reuben Sandwich", 299, 4, true, "Corned beef sandwich", 520),
-            new MainCourse("MC072", "Pulled Pork Sandwich", 319, 5, true, "Slow-cooked pork", 480),
-            new MainCourse("MC073", "Caesar Salad", 239, 3, true, "Romaine with dressing", 350),
-            new MainCourse("MC074", "Fish and Chips", 349, 5, true, "Battered fish with fries", 550),
-            new MainCourse("MC075", "Bacon Cheeseburger", 329, 5, true, "Burger with bacon", 600),
-            new MainCourse("MC076", "Chicken Fried Steak", 359, 6, true, "Breaded steak with gravy", 650),
-            new MainCourse("MC077", "Turkey Dinner", 399, 7, true, "Roast turkey with sides", 700),
-            new MainCourse("MC078", "Lobster Roll", 499, 5, true, "Lobster meat sandwich", 450),
-            new MainCourse("MC079", "Biscuits and Gravy", 229, 4, true, "Southern breakfast", 480),
-            new MainCourse("MC080", "Chili Cheese Dog", 249, 4, true, "Hot dog with chili", 500),
-            
-            new Dessert("DS031", "Apple Pie", 149, 3, true, "Classic American pie", 350),
-            new Dessert("DS032", "Cheesecake", 169, 2, true, "Creamy New York style", 400),
-            new Dessert("DS033", "Chocolate Chip Cookies", 99, 2, true, "Fresh baked cookies", 200),
-            new Dessert("DS034", "Brownie Sundae", 179, 3, true, "Warm brownie with ice cream", 450),
-            new Dessert("DS035", "Banana Split", 199, 3, true, "Classic ice cream dessert", 500),
-            new Dessert("DS036", "Pecan Pie", 159, 3, true, "Southern nut pie", 380),
-            new Dessert("DS037", "Red Velvet Cake", 189, 2, true, "Southern specialty cake", 420),
-            new Dessert("DS038", "Key Lime Pie", 149, 2, true, "Tangy citrus pie", 350),
-            new Dessert("DS039", "Milkshake", 129, 2, true, "Thick creamy shake", 300),
-            new Dessert("DS040", "S'mores", 139, 3, true, "Campfire classic", 250),
-            
-            new Beverage("BV061", "Root Beer Float", 149, 2, true, "Soda with ice cream", 250),
-            new Beverage("BV062", "Iced Tea", 79, 1, true, "Sweet or unsweetened", 100),
-            new Beverage("BV063", "Lemonade", 89, 1, true, "Fresh squeezed", 120),
-            new Beverage("BV064", "Milkshake", 129, 2, true, "Vanilla, chocolate or strawberry", 300),
-            new Beverage("BV065", "Soda", 59, 1, true, "Various flavors", 150),
-            new Beverage("BV066", "Coffee", 69, 1, true, "Fresh brewed", 5),
-            new Beverage("BV067", "Craft Beer", 199, 1, true, "Local selection", 150),
-            new Beverage("BV068", "Bourbon", 179, 1, true, "Kentucky straight", 100),
-            new Beverage("BV069", "Mint Julep", 189, 2, true, "Southern cocktail", 200),
-            new Beverage("BV070", "Egg Cream", 109, 1, true, "New York classic", 180),
-            new Beverage("BV071", "Arnold Palmer", 99, 1, true, "Half iced tea, half lemonade", 120),
-            new Beverage("BV072", "Hot Chocolate", 119, 2, true, "Rich chocolate drink", 200)
-        ));
+    
+    public Meal findMeal(String mealId) {
+        getMenu();
+        return mealsById.get(mealId);
     }
-
-    private void addMexicanMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST041", "Guacamole", 179, 3, true, "Fresh avocado dip", 220),
-            new Starter("ST042", "Queso Fundido", 199, 4, true, "Melted cheese dip", 280),
-            new Starter("ST043", "Nachos", 219, 3, true, "Tortilla chips with toppings", 400),
-            new Starter("ST044", "Elote", 149, 3, true, "Mexican street corn", 250),
-            new Starter("ST045", "Tostadas", 169, 3, true, "Crispy corn tortillas", 200),
-            new Starter("ST046", "Chorizo Quesadilla", 229, 4, true, "Spicy sausage and cheese", 350),
-            new Starter("ST047", "Ceviche", 249, 4, true, "Citrus-marinated seafood", 180),
-            new Starter("ST048", "Sopes", 189, 4, true, "Thick corn cakes", 280),
-            new Starter("ST049", "Taco Salad", 199, 3, true, "Crispy shell with fillings", 380),
-            new Starter("ST050", "Chiles Toreados", 159, 3, true, "Blistered peppers", 120),
-            
-            new MainCourse("MC081", "Tacos al Pastor", 249, 4, true, "Marinated pork tacos", 350),
-            new MainCourse("MC082", "Enchiladas", 279, 5, true, "Stuffed tortillas with sauce", 420),
-            new MainCourse("MC083", "Burrito", 299, 5, true, "Large flour tortilla wrap", 550),
-            new MainCourse("MC084", "Chiles Rellenos", 259, 5, true, "Stuffed poblano peppers", 380),
-            new MainCourse("MC085", "Mole Poblano", 329, 6, true, "Chicken in rich sauce", 450),
-            new MainCourse("MC086", "Fajitas", 349, 6, true, "Sizzling grilled meat", 480),
-            new MainCourse("MC087", "Tamales", 229, 5, true, "Steamed corn dough", 320),
-            new MainCourse("MC088", "Pozole", 199, 4, true, "Hominy stew", 350),
-            new MainCourse("MC089", "Carnitas", 299, 5, true, "Slow-cooked pork", 400),
-            new MainCourse("MC090", "Quesadilla", 219, 4, true, "Grilled cheese tortilla", 380),
-            new MainCourse("MC091", "Tlayuda", 259, 5, true, "Oaxacan pizza", 420),
-            new MainCourse("MC092", "Birria Tacos", 279, 5, true, "Stewed meat tacos", 350),
-            new MainCourse("MC093", "Pambazo", 229, 4, true, "Dipped bread sandwich", 400),
-            new MainCourse("MC094", "Huarache", 239, 5, true, "Oval-shaped masa base", 380),
-            new MainCourse("MC095", "Sopes", 199, 4, true, "Thick corn cakes", 320),
-            new MainCourse("MC096", "Chilaquiles", 189, 4, true, "Fried tortilla dish", 350),
-            new MainCourse("MC097", "Menudo", 209, 5, true, "Tripe soup", 300),
-            new MainCourse("MC098", "Barbacoa", 319, 6, true, "Slow-cooked beef", 450),
-            new MainCourse("MC099", "Pescado Zarandeado", 379, 6, true, "Grilled whole fish", 400),
-            new MainCourse("MC100", "Carne Asada", 349, 5, true, "Grilled steak", 480),
-            
-            new Dessert("DS041", "Churros", 129, 3, true, "Fried dough pastry", 280),
-            new Dessert("DS042", "Flan", 119, 2, true, "Caramel custard", 220),
-            new Dessert("DS043", "Tres Leches Cake", 149, 2, true, "Three milk cake", 350),
-            new Dessert("DS044", "Arroz con Leche", 99, 2, true, "Rice pudding", 250),
-            new Dessert("DS045", "Pastel de Elote", 139, 3, true, "Corn cake", 300),
-            new Dessert("DS046", "Cajeta Crepes", 159, 3, true, "Goat milk caramel crepes", 320),
-            new Dessert("DS047", "Buñuelos", 109, 2, true, "Fried dough with syrup", 280),
-            new Dessert("DS048", "Jericalla", 119, 2, true, "Mexican custard", 200),
-            new Dessert("DS049", "Mangonada", 139, 3, true, "Mango sorbet with chili", 250),
-            new Dessert("DS050", "Ate con Queso", 129, 2, true, "Fruit paste with cheese", 220),
-            
-            new Beverage("BV081", "Horchata", 99, 2, true, "Rice milk drink", 180),
-            new Beverage("BV082", "Jamaica", 89, 1, true, "Hibiscus tea", 50),
-            new Beverage("BV083", "Tamarindo", 99, 1, true, "Tamarind drink", 120),
-            new Beverage("BV084", "Michelada", 179, 2, true, "Beer cocktail", 150),
-            new Beverage("BV085", "Margarita", 199, 2, true, "Classic tequila cocktail", 200),
-            new Beverage("BV086", "Paloma", 189, 2, true, "Grapefruit tequila drink", 180),
-            new Beverage("BV087", "Tequila", 159, 1, true, "100% agave", 100),
-            new Beverage("BV088", "Mezcal", 179, 1, true, "Smoky agave spirit", 110),
-            new Beverage("BV089", "Atole", 109, 2, true, "Warm corn drink", 200),
-            new Beverage("BV090", "Café de Olla", 89, 2, true, "Spiced Mexican coffee", 120),
-            new Beverage("BV091", "Pulque", 149, 1, true, "Fermented agave drink", 150),
-            new Beverage("BV092", "Mexican Hot Chocolate", 119, 2, true, "Spiced chocolate", 180)
-        ));
+    
+    private void buildIndexes(List<Meal> meals) {
+        Map<String, Meal> byId = new HashMap<>();
+        for (Meal meal : meals) {
+            byId.put(meal.getId(), meal);
+        }
+        mealsById = byId;
+        
+        Map<MealCategory, List<Meal>> byCategory = new EnumMap<>(MealCategory.class);
+        for (MealCategory category : MealCategory.values()) {
+            byCategory.put(category, new ArrayList<>());
+        }
+        for (Meal meal : meals) {
+            byCategory.get(meal.getCategory()).add(meal);
+        }
+        for (MealCategory category : MealCategory.values()) {
+            byCategory.put(category, Collections.unmodifiableList(
+                Arrays.asList(byCategory.get(category).toArray(new Meal[0]))));
+        }
+        mealsByCategory = Collections.unmodifiableMap(byCategory);
+        
+        Meal[] byPrice = meals.toArray(new Meal[0]);
+        Arrays.sort(byPrice, (m1, m2) -> Long.compare(m2.getPricePaise(), m1.getPricePaise()));
+        priciestFirst = Collections.unmodifiableList(Arrays.asList(byPrice));
     }
+}
 
-    private void addChineseMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST051", "Spring Rolls", 149, 3, true, "Crispy vegetable rolls", 200),
-            new Starter("ST052", "Dumplings", 179, 4, true, "Steamed or fried", 250),
-            new Starter("ST053", "Wonton Soup", 129, 3, true, "Pork dumpling soup", 180),
-            new Starter("ST054", "Peking Duck Pancakes", 299, 4, true, "Thin pancakes with duck", 350),
-            new Starter("ST055", "Scallion Pancakes", 159, 3, true, "Flaky layered bread", 280),
-            new Starter("ST056", "Hot and Sour Soup", 139, 3, true, "Spicy tangy soup", 200),
-            new Starter("ST057", "Egg Rolls", 169, 3, true, "Crispy fried rolls", 300),
-            new Starter("ST058", "Szechuan Chicken", 199, 4, true, "Spicy appetizer", 250),
-            new Starter("ST059", "Crab Rangoon", 189, 4, true, "Cream cheese wontons", 280),
-            new Starter("ST060", "Spicy Cucumber Salad", 119, 2, true, "Refreshing side", 100),
-            
-            new MainCourse("MC101", "Kung Pao Chicken", 299, 5, true, "Spicy stir-fry", 450),
-            new MainCourse("MC102", "Beef with Broccoli", 279, 4, true, "Classic stir-fry", 380),
-            new MainCourse("MC103", "Sweet and Sour Pork", 259, 4, true, "Crispy pork in sauce", 420),
-            new MainCourse("MC104", "Mapo Tofu", 239, 4, true, "Spicy tofu dish", 350),
-            new MainCourse("MC105", "Peking Duck", 499, 6, true, "Roasted duck", 550),
-            new MainCourse("MC106", "General Tso's Chicken", 289, 5, true, "Crispy chicken in sauce", 480),
-            new MainCourse("MC107", "Moo Shu Pork", 269, 5, true, "Stir-fry with pancakes", 400),
-            new MainCourse("MC108", "Szechuan Beef", 309, 5, true, "Spicy beef dish", 450),
-            new MainCourse("MC109", "Honey Walnut Shrimp", 349, 5, true, "Crispy shrimp", 400),
-            new MainCourse("MC110", "Chow Mein", 229, 4, true, "Stir-fried noodles", 380),
-            new MainCourse("MC111", "Fried Rice", 219, 4, true, "Classic rice dish", 350),
-            new MainCourse("MC112", "Orange Chicken", 279, 5, true, "Sweet citrus chicken", 420),
-            new MainCourse("MC113", "Egg Foo Young", 239, 4, true, "Chinese omelette", 300),
-            new MainCourse("MC114", "Char Siu Pork", 259, 5, true, "BBQ pork", 380),
-            new MainCourse("MC115", "Hot Pot", 399, 6, true, "Interactive cooking", 500),
-            new MainCourse("MC116", "Lo Mein", 229, 4, true, "Soft egg noodles", 350),
-            new MainCourse("MC117", "Xiaolongbao", 249, 4, true, "Soup dumplings", 280),
-            new MainCourse("MC118", "Dan Dan Noodles", 219, 4, true, "Spicy Sichuan noodles", 320),
-            new MainCourse("MC119", "Salt and Pepper Shrimp", 329, 5, true, "Crispy seasoned shrimp", 350),
-            new MainCourse("MC120", "Clay Pot Rice", 279, 5, true, "Rice cooked in clay pot", 400),
-            
-            new Dessert("DS051", "Mango Pudding", 119, 2, true, "Creamy mango dessert", 200),
-            new Dessert("DS052", "Red Bean Bun", 99, 2, true, "Steamed sweet bun", 180),
-            new Dessert("DS053", "Sesame Balls", 109, 3, true, "Fried glutinous rice", 220),
-            new Dessert("DS054", "Egg Tarts", 129, 2, true, "Flaky pastry with custard", 250),
-            new Dessert("DS055", "Almond Jelly", 89, 2, true, "Light almond dessert", 150),
-            new Dessert("DS056", "Fortune Cookies", 59, 1, true, "Classic crispy cookies", 50),
-            new Dessert("DS057", "Taro Cake", 119, 2, true, "Steamed root vegetable cake", 180),
-            new Dessert("DS058", "Lychee with Ice Cream", 139, 2, true, "Tropical fruit dessert", 220),
-            new Dessert("DS059", "Mooncake", 149, 2, true, "Festive pastry", 300),
-            new Dessert("DS060", "Sweet Tofu Pudding", 99, 2, true, "Silky soybean dessert", 150),
-            
-            new Beverage("BV101", "Jasmine Tea", 69, 1, true, "Fragrant Chinese tea", 5),
-            new Beverage("BV102", "Bubble Tea", 129, 2, true, "Milk tea with tapioca", 250),
-            new Beverage("BV103", "Plum Juice", 89, 1, true, "Sweet-sour drink", 120),
-            new Beverage("BV104", "Soy Milk", 79, 1, true, "Traditional drink", 100),
-            new Beverage("BV105", "Lychee Martini", 199, 2, true, "Fruit cocktail", 180),
-            new Beverage("BV106", "Oolong Tea", 79, 1, true, "Semi-oxidized tea", 5),
-            new Beverage("BV107", "Honey Lemon Tea", 99, 1, true, "Soothing hot drink", 120),
-            new Beverage("BV108", "Baijiu", 179, 1, true, "Chinese liquor", 150),
-            new Beverage("BV109", "Winter Melon Tea", 89, 1, true, "Sweet herbal drink", 100),
-            new Beverage("BV110", "Sour Plum Drink", 99, 1, true, "Refreshing beverage", 80),
-            new Beverage("BV111", "Chrysanthemum Tea", 79, 1, true, "Floral herbal tea", 5),
-            new Beverage("BV112", "Ginger Tea", 89, 1, true, "Spiced hot drink", 30)
-        ));
+// ================== MENU CATALOG ==================
+// Reads the tab-separated catalog on disk:
+//   catalog/restaurants.tsv  id, name, cuisine, delivery fee, x and y (km)
+//   catalog/menus/<id>.tsv   type (S/M/D/B), id, name, price, prep seconds,
+//                            available, description, calories
+// Only the restaurant directory is read at startup; each menu file is read
+// the first time its restaurant's menu is needed.
+final class MenuCatalog {
+    static final String CATALOG_DIR = System.getProperty("foodflex.catalog", "catalog");
+    
+    private MenuCatalog() {}
+    
+    public static List<Restaurant> loadRestaurants(File catalogDir) {
+        List<Restaurant> restaurants = new ArrayList<>();
+        File menusDir = new File(catalogDir, "menus");
+        for (String[] fields : readRecords(new File(catalogDir, "restaurants.tsv"), 6)) {
+            checkId(fields[0], "restaurants.tsv");
+            restaurants.add(new Restaurant(fields[0], fields[1], fields[2], Money.parse(fields[3]),
+                Double.parseDouble(fields[4]), Double.parseDouble(fields[5]), new File(menusDir, fields[0] + ".tsv"),
+                restaurants.size()));
+        }
+        return restaurants;
     }
-
-    private void addMediterraneanMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST061", "Hummus", 149, 2, true, "Chickpea dip", 200),
-            new Starter("ST062", "Baba Ganoush", 159, 3, true, "Eggplant dip", 180),
-            new Starter("ST063", "Tzatziki", 139, 2, true, "Yogurt cucumber dip", 150),
-            new Starter("ST064", "Dolma", 169, 3, true, "Stuffed grape leaves", 220),
-            new Starter("ST065", "Falafel", 179, 4, true, "Fried chickpea balls", 250),
-            new Starter("ST066", "Spanakopita", 189, 3, true, "Spinach pie", 280),
-            new Starter("ST067", "Tabouli", 129, 2, true, "Parsley salad", 120),
-            new Starter("ST068", "Fattoush", 139, 2, true, "Bread salad", 180),
-            new Starter("ST069", "Muhammara", 159, 3, true, "Red pepper dip", 200),
-            new Starter("ST070", "Halloumi Fries", 199, 4, true, "Fried cheese sticks", 300),
-            
-            new MainCourse("MC121", "Shawarma", 299, 5, true, "Spiced meat wrap", 450),
-            new MainCourse("MC122", "Gyro", 279, 4, true, "Meat with pita", 400),
-            new MainCourse("MC123", "Moussaka", 329, 6, true, "Eggplant casserole", 480),
-            new MainCourse("MC124", "Kebab Platter", 349, 5, true, "Grilled meat assortment", 500),
-            new MainCourse("MC125", "Paella", 399, 7, true, "Spanish rice dish", 550),
-            new MainCourse("MC126", "Tagine", 359, 6, true, "Slow-cooked stew", 480),
-            new MainCourse("MC127", "Falafel Wrap", 239, 4, true, "Chickpea patty wrap", 380),
-            new MainCourse("MC128", "Stuffed Peppers", 259, 5, true, "Bell peppers with rice", 350),
-            new MainCourse("MC129", "Lamb Kofta", 299, 5, true, "Spiced meatballs", 420),
-            new MainCourse("MC130", "Seafood Orzo", 349, 6, true, "Pasta with seafood", 450),
-            new MainCourse("MC131", "Chicken Souvlaki", 279, 4, true, "Grilled chicken skewers", 380),
-            new MainCourse("MC132", "Ratatouille", 239, 5, true, "Vegetable stew", 300),
-            new MainCourse("MC133", "Grilled Octopus", 379, 6, true, "Tender seafood", 350),
-            new MainCourse("MC134", "Lentil Soup", 189, 3, true, "Hearty legume soup", 250),
-            new MainCourse("MC135", "Pide", 269, 5, true, "Turkish flatbread pizza", 400),
-            new MainCourse("MC136", "Stuffed Eggplant", 249, 5, true, "Baked with fillings", 350),
-            new MainCourse("MC137", "Greek Salad", 219, 3, true, "Fresh vegetable salad", 280),
-            new MainCourse("MC138", "Baklava", 169, 2, true, "Sweet pastry", 320),
-            new MainCourse("MC139", "Couscous", 199, 4, true, "Steamed semolina", 300),
-            new MainCourse("MC140", "Grilled Fish", 349, 5, true, "Fresh seafood", 400),
-            
-            new Dessert("DS061", "Baklava", 149, 2, true, "Layered pastry with nuts", 350),
-            new Dessert("DS062", "Kunafa", 169, 3, true, "Cheese pastry", 400),
-            new Dessert("DS063", "Loukoumades", 139, 3, true, "Greek doughnuts", 300),
-            new Dessert("DS064", "Halva", 119, 2, true, "Sesame sweet", 250),
-            new Dessert("DS065", "Revani", 129, 2, true, "Semolina cake", 280),
-            new Dessert("DS066", "Mahalabia", 109, 2, true, "Milk pudding", 200),
-            new Dessert("DS067", "Sutlac", 119, 3, true, "Rice pudding", 220),
-            new Dessert("DS068", "Galaktoboureko", 159, 3, true, "Custard pie", 350),
-            new Dessert("DS069", "Qatayef", 139, 3, true, "Stuffed pancakes", 280),
-            new Dessert("DS070", "Turkish Delight", 99, 1, true, "Chewy confection", 180),
-            
-            new Beverage("BV121", "Turkish Coffee", 89, 2, true, "Strong traditional coffee", 10),
-            new Beverage("BV122", "Mint Tea", 79, 1, true, "Refreshing herbal tea", 5),
-            new Beverage("BV123", "Ayran", 69, 1, true, "Yogurt drink", 100),
-            new Beverage("BV124", "Arak", 179, 1, true, "Anise-flavored spirit", 120),
-            new Beverage("BV125", "Pomegranate Juice", 99, 1, true, "Fresh squeezed", 120),
-            new Beverage("BV126", "Sahlab", 109, 2, true, "Warm milk drink", 200),
-            new Beverage("BV127", "Raki", 159, 1, true, "Turkish alcoholic drink", 130),
-            new Beverage("BV128", "Lemonade with Mint", 89, 1, true, "Refreshing citrus drink", 120),
-            new Beverage("BV129", "Rose Water", 79, 1, true, "Floral flavored water", 5),
-            new Beverage("BV130", "Almond Milk", 99, 1, true, "Nutty dairy alternative", 150),
-            new Beverage("BV131", "Sour Cherry Juice", 109, 1, true, "Tart fruit drink", 100),
-            new Beverage("BV132", "Cardamom Coffee", 99, 2, true, "Spiced coffee", 10)
-        ));
+    
+    public static List<Meal> loadMenu(File menuFile) {
+        List<Meal> menu = new ArrayList<>();
+        for (String[] f : readRecords(menuFile, 8)) {
+            String id = f[1], name = f[2], description = f[6];
+            checkId(id, menuFile.getName());
+            long price = Money.parse(f[3]);
+            int prepTime = Integer.parseInt(f[4]);
+            boolean available = Boolean.parseBoolean(f[5]);
+            int calories = Integer.parseInt(f[7]);
+            switch (f[0]) {
+                case "S":
+                    menu.add(new Starter(id, name, price, prepTime, available, description, calories));
+                    break;
+                case "M":
+                    menu.add(new MainCourse(id, name, price, prepTime, available, description, calories));
+                    break;
+                case "D":
+                    menu.add(new Dessert(id, name, price, prepTime, available, description, calories));
+                    break;
+                case "B":
+                    menu.add(new Beverage(id, name, price, prepTime, available, description, calories));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown meal type '" + f[0] + "' in " + menuFile);
+            }
+        }
+        return menu;
     }
-
-    private void addBBQMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST071", "BBQ Wings", 229, 4, true, "Smoky chicken wings", 350),
-            new Starter("ST072", "Pulled Pork Sliders", 249, 4, true, "Mini sandwiches", 300),
-            new Starter("ST073", "Brisket Tacos", 269, 4, true, "Smoked meat tacos", 320),
-            new Starter("ST074", "Jalapeño Poppers", 199, 3, true, "Stuffed peppers", 280),
-            new Starter("ST075", "Smoked Sausage", 219, 3, true, "House-made links", 350),
-            new Starter("ST076", "BBQ Nachos", 239, 4, true, "Loaded with meat", 450),
-            new Starter("ST077", "Fried Pickles", 179, 3, true, "Battered and fried", 250),
-            new Starter("ST078", "Deviled Eggs", 189, 2, true, "Classic Southern", 200),
-            new Starter("ST079", "Cornbread", 159, 2, true, "Sweet Southern", 220),
-            new Starter("ST080", "Collard Greens", 169, 3, true, "Slow-cooked greens", 150),
-            
-            new MainCourse("MC141", "Brisket Platter", 499, 6, true, "Slow-smoked beef", 600),
-            new MainCourse("MC142", "Ribs Platter", 449, 5, true, "Fall-off-the-bone", 550),
-            new MainCourse("MC143", "Pulled Pork", 379, 5, true, "Shredded pork", 500),
-            new MainCourse("MC144", "Smoked Chicken", 349, 5, true, "Juicy and tender", 450),
-            new MainCourse("MC145", "Burnt Ends", 429, 5, true, "Brisket pieces", 480),
-            new MainCourse("MC146", "BBQ Sampler", 549, 6, true, "Assorted meats", 700),
-            new MainCourse("MC147", "Beef Ribs", 499, 6, true, "Meaty ribs", 650),
-            new MainCourse("MC148", "Smoked Turkey", 399, 5, true, "Juicy poultry", 400),
-            new MainCourse("MC149", "BBQ Sandwich", 299, 4, true, "Pulled pork or chicken", 450),
-            new MainCourse("MC150", "Sausage Platter", 329, 4, true, "Assorted smoked", 400),
-            new MainCourse("MC151", "BBQ Burger", 349, 5, true, "With smoked meat", 550),
-            new MainCourse("MC152", "Pork Belly", 379, 5, true, "Crispy and tender", 500),
-            new MainCourse("MC153", "BBQ Tacos", 299, 4, true, "With choice of meat", 380),
-            new MainCourse("MC154", "Smoked Meatloaf", 329, 5, true, "BBQ style", 450),
-            new MainCourse("MC155", "BBQ Chicken", 279, 4, true, "Half or whole", 400),
-            new MainCourse("MC156", "BBQ Plate", 399, 5, true, "Two meat combo", 500),
-            new MainCourse("MC157", "Smoked Salmon", 429, 5, true, "Wood-fired fish", 450),
-            new MainCourse("MC158", "BBQ Pizza", 349, 5, true, "With smoked meats", 480),
-            new MainCourse("MC159", "BBQ Bowl", 299, 4, true, "Meat over rice", 400),
-            new MainCourse("MC160", "BBQ Mac & Cheese", 259, 4, true, "With pulled pork", 450),
-            
-            new Dessert("DS071", "Banana Pudding", 149, 2, true, "Southern classic", 350),
-            new Dessert("DS072", "Pecan Pie", 169, 3, true, "Nutty sweet pie", 400),
-            new Dessert("DS073", "Bread Pudding", 159, 3, true, "With bourbon sauce", 380),
-            new Dessert("DS074", "Cobbler", 139, 3, true, "Seasonal fruit", 300),
-            new Dessert("DS075", "Fried Pie", 129, 2, true, "Handheld dessert", 250),
-            new Dessert("DS076", "Sweet Potato Pie", 149, 3, true, "Southern specialty", 350),
-            new Dessert("DS077", "Chocolate Chess Pie", 159, 2, true, "Rich chocolate", 400),
-            new Dessert("DS078", "Peach Crisp", 139, 3, true, "Warm fruit dessert", 300),
-            new Dessert("DS079", "S'mores", 119, 2, true, "Campfire classic", 250),
-            new Dessert("DS080", "Fried Cheesecake", 179, 3, true, "Crispy outside", 450),
-            
-            new Beverage("BV141", "Sweet Tea", 79, 1, true, "Southern staple", 150),
-            new Beverage("BV142", "Lemonade", 89, 1, true, "Fresh squeezed", 120),
-            new Beverage("BV143", "Bourbon", 179, 1, true, "Kentucky straight", 100),
-            new Beverage("BV144", "Root Beer", 69, 1, true, "Classic soda", 150),
-            new Beverage("BV145", "Iced Coffee", 99, 1, true, "Cold brew", 50),
-            new Beverage("BV146", "Mint Julep", 189, 2, true, "Bourbon cocktail", 200),
-            new Beverage("BV147", "Peach Tea", 89, 1, true, "Fruit-infused", 120),
-            new Beverage("BV148", "Hard Cider", 149, 1, true, "Local selection", 150),
-            new Beverage("BV149", "Arnold Palmer", 99, 1, true, "Half tea, half lemonade", 120),
-            new Beverage("BV150", "Sarsaparilla", 109, 1, true, "Old-fashioned soda", 140),
-            new Beverage("BV151", "Bourbon Slush", 159, 2, true, "Frozen cocktail", 180),
-            new Beverage("BV152", "Sweet Tea Vodka", 169, 1, true, "Southern cocktail", 150)
-        ));
+    
+    // Order history records store ids packed into 8 bytes, so longer ones could never be saved
+    private static void checkId(String id, String file) {
+        if (!OrderHistory.isStorableId(id)) {
+            throw new IllegalStateException("Id '" + id + "' in " + file + " must be 1-8 ASCII characters");
+        }
     }
-
-    private void addFrenchMenu() {
-        menu.addAll(Arrays.asList(
-            new Starter("ST081", "Escargot", 299, 4, true, "Garlic butter snails", 250),
-            new Starter("ST082", "French Onion Soup", 199, 3, true, "Caramelized onion soup", 300),
-            new Starter("ST083", "Pâté", 229, 3, true, "Duck liver spread", 280),
-            new Starter("ST084", "Brie en Croûte", 249, 4, true, "Baked brie in pastry", 350),
-            new Starter("ST085", "Salade Niçoise", 219, 3, true, "Tuna salad", 280),
-            new Starter("ST086", "Soupe à l'Oignon", 189, 3, true, "Classic onion soup", 250),
-            new Starter("ST087", "Tartare de Boeuf", 279, 4, true, "Beef tartare", 220),
-            new Starter("ST088", "Gougères", 179, 3, true, "Cheese puffs", 200),
-            new Starter("ST089", "Ratatouille", 199, 4, true, "Vegetable stew", 180),
-            new Starter("ST090", "Quiche Lorraine", 229, 4, true, "Savory custard pie", 300),
-            
-            new MainCourse("MC161", "Coq au Vin", 399, 6, true, "Chicken in wine", 450),
-            new MainCourse("MC162", "Boeuf Bourguignon", 429, 7, true, "Beef stew", 500),
-            new MainCourse("MC163", "Duck Confit", 449, 6, true, "Slow-cooked duck", 480),
-            new MainCourse("MC164", "Bouillabaisse", 479, 7, true, "Seafood stew", 450),
-            new MainCourse("MC165", "Cassoulet", 399, 6, true, "Bean and meat stew", 550),
-            new MainCourse("MC166", "Steak Frites", 499, 5, true, "Steak with fries", 600),
-            new MainCourse("MC167", "Croque Monsieur", 279, 4, true, "Ham and cheese sandwich", 400),
-            new MainCourse("MC168", "Poulet Rôti", 349, 5, true, "Roast chicken", 450),
-            new MainCourse("MC169", "Salmon en Papillote", 379, 5, true, "Steamed salmon", 400),
-            new MainCourse("MC170", "Tarte Flambée", 299, 4, true, "Alsatian pizza", 380),
-            new MainCourse("MC171", "Quenelles", 329, 5, true, "Fish dumplings", 350),
-            new MainCourse("MC172", "Sole Meunière", 429, 5, true, "Butter-fried fish", 400),
-            new MainCourse("MC173", "Confit de Canard", 449, 6, true, "Preserved duck", 480),
-            new MainCourse("MC174", "Blanquette de Veau", 399, 6, true, "Veal stew", 450),
-            new MainCourse("MC175", "Gigot d'Agneau", 499, 7, true, "Roast leg of lamb", 550),
-            new MainCourse("MC176", "Truffle Pasta", 379, 5, true, "Luxury mushroom", 400),
-            new MainCourse("MC177", "Moules Marinières", 349, 5, true, "Mussels in white wine", 350),
-            new MainCourse("MC178", "Poulet Basquaise", 329, 5, true, "Chicken with peppers", 400),
-            new MainCourse("MC179", "Pot-au-Feu", 399, 6, true, "Boiled meat and veg", 450),
-            new MainCourse("MC180", "Choucroute Garnie", 379, 6, true, "Sauerkraut with meats", 500),
-            
-            new Dessert("DS081", "Crème Brûlée", 169, 3, true, "Burnt cream", 350),
-            new Dessert("DS082", "Tarte Tatin", 179, 4, true, "Upside-down apple tart", 380),
-            new Dessert("DS083", "Macarons", 129, 2, true, "Colorful meringue", 200),
-            new Dessert("DS084", "Profiteroles", 159, 3, true, "Cream puffs", 300),
-            new Dessert("DS085", "Mille-Feuille", 189, 3, true, "Napoleon pastry", 350),
-            new Dessert("DS086", "Éclair", 139, 2, true, "Cream-filled pastry", 250),
-            new Dessert("DS087", "Soufflé", 199, 4, true, "Fluffy baked dessert", 280),
-            new Dessert("DS088", "Madeleines", 119, 2, true, "Shell-shaped cakes", 180),
-            new Dessert("DS089", "Clafoutis", 149, 3, true, "Cherry custard", 300),
-            new Dessert("DS090", "Pain Perdu", 139, 3, true, "French toast", 350),
-            
-            new Beverage("BV161", "Champagne", 599, 1, true, "French sparkling wine", 120),
-            new Beverage("BV162", "Bordeaux", 399, 1, true, "Red wine", 120),
-            new Beverage("BV163", "Chablis", 349, 1, true, "White wine", 110),
-            new Beverage("BV164", "Kir Royale", 249, 2, true, "Champagne cocktail", 130),
-            new Beverage("BV165", "Pastis", 179, 1, true, "Anise-flavored spirit", 100),
-            new Beverage("BV166", "Cognac", 299, 1, true, "French brandy", 120),
-            new Beverage("BV167", "Café au Lait", 99, 2, true, "Coffee with milk", 80),
-            new Beverage("BV168", "Citron Pressé", 89, 1, true, "Fresh lemonade", 100),
-            new Beverage("BV169", "Thé à la Menthe", 79, 1, true, "Mint tea", 5),
-            new Beverage("BV170", "Vin Chaud", 129, 2, true, "Mulled wine", 120),
-            new Beverage("BV171", "Perrier", 69, 1, true, "Sparkling water", 0),
-            new Beverage("BV172", "Cidre", 149, 1, true, "French cider", 120)
-        ));
+    
+    private static List<String[]> readRecords(File file, int fieldCount) {
+        List<String[]> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != fieldCount) {
+                    throw new IllegalStateException("Malformed catalog line in " + file + ": " + line);
+                }
+                records.add(fields);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read catalog file " + file, e);
+        }
+        return records;
     }
-
-    public String getId() { return id; }
-    public String getName() { return name; }
-    public String getCuisine() { return cuisine; }
-    public double getDeliveryFee() { return deliveryFee; }
-    public List<Meal> getMenu() { return menu; }
-    public double getRating() { return rating; }
 }
 
 // ================== MENU MANAGER ==================
 class MenuManager {
-    private final List<Restaurant> restaurants = new ArrayList<>();
+    private final List<Restaurant> restaurants;
+    private final Map<String, Restaurant> restaurantsById = new HashMap<>();
     
     public MenuManager() {
-        // Initialize with sample restaurants
-        restaurants.add(new Restaurant("R001", "Spice Trail", "Indian", 49));
-        restaurants.add(new Restaurant("R002", "Pasta Paradise", "Italian", 59));
-        restaurants.add(new Restaurant("R003", "Tokyo Grill", "Japanese", 69));
-        restaurants.add(new Restaurant("R004", "Burger Barn", "American", 39));
-        restaurants.add(new Restaurant("R005", "Fiesta Mexicana", "Mexican", 49));
-        restaurants.add(new Restaurant("R006", "Dragon Palace", "Chinese", 59));
-        restaurants.add(new Restaurant("R007", "Olive Grove", "Mediterranean", 49));
-        restaurants.add(new Restaurant("R008", "Smokehouse", "BBQ", 59));
-        restaurants.add(new Restaurant("R009", "Le Petit Bistro", "French", 79));
+        this(new File(MenuCatalog.CATALOG_DIR));
+    }
+    
+    public MenuManager(File catalogDir) {
+        restaurants = Collections.unmodifiableList(MenuCatalog.loadRestaurants(catalogDir));
+        for (Restaurant r : restaurants) {
+            restaurantsById.put(r.getId(), r);
+        }
     }
     
     public List<Restaurant> getRestaurants() { return restaurants; }
+    public Restaurant findRestaurant(String id) { return restaurantsById.get(id); }
 }
 
-// ================== CART SYSTEM ==================
-class Cart {
-    private final List<Meal> items = new ArrayList<>();
+// ================== MENU SEARCH ==================
+// One meal of one restaurant, as listed by the catalog-wide indexes
+final class MenuEntry {
+    private final Meal meal;
+    private final Restaurant restaurant;
     
-    public void addItem(Meal item) throws ItemUnavailableException {
-        if (!item.isAvailable()) {
-            throw new ItemUnavailableException(item.getName() + " is currently unavailable!");
+    MenuEntry(Meal meal, Restaurant restaurant) {
+        this.meal = meal;
+        this.restaurant = restaurant;
+    }
+    
+    public Meal getMeal() { return meal; }
+    public Restaurant getRestaurant() { return restaurant; }
+    
+    // Every restaurant's menu, loading any that are not loaded yet
+    public static List<MenuEntry> listAll(MenuManager menuManager) {
+        List<MenuEntry> entries = new ArrayList<>();
+        for (Restaurant restaurant : menuManager.getRestaurants()) {
+            for (Meal meal : restaurant.getMenu()) {
+                entries.add(new MenuEntry(meal, restaurant));
+            }
         }
-        items.add(item);
+        return entries;
     }
+}
+
+// Inverted index over meal names and descriptions across every restaurant.
+// The term dictionary is a sorted array, so a prefix is a binary search and
+// a walk over adjacent terms. One-edit typos are found through a deletion
+// index: each term is filed under itself and all of its one-letter
+// deletions, so a query probes only the keys made from its own deletions
+// instead of scanning the dictionary.
+//
+// A term's postings hold name hits before description hits, each ordered
+// by name length, which is also the ranking order. A one-word query walks
+// score levels from best to worst (exact name hit, prefix name hit, ...)
+// and stops as soon as it has enough results, so a broad word like "chi"
+// costs about as much as a narrow one. Longer queries take the union of
+// the rarest word's postings and check the other words against each
+// candidate's own terms.
+final class MenuSearchIndex {
+    static final int MAX_RESULTS = 50;
+    private static final int MAX_QUERY_TOKENS = 8;
+    private static final int MAX_PREFIX_TERMS = 64;
+    private static final int MIN_TYPO_LENGTH = 4;
+    private static final byte NAME_WEIGHT = 3;
+    private static final byte DESCRIPTION_WEIGHT = 1;
+    private static final float[] FACTORS = {1f, 0.6f, 0.4f}; // Exact, prefix, typo
     
-    public void removeItem(Meal item) {
-        items.remove(item);
+    // Terms matching one query word, with the index into FACTORS for each
+    private static final class TokenMatch {
+        int[] terms = new int[8];
+        byte[] kinds = new byte[8];
+        int size;
+        long postings;
+        
+        void add(int term, int kind) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+            }
+            terms[size] = term;
+            kinds[size++] = (byte) kind;
+        }
     }
     
-    public void clear() {
-        items.clear();
+    private final MenuEntry[] entries;
+    private final int[] nameLengths;
+    private final String[] terms; // Sorted
+    private final int[] postingStart; // Term t: name hits [postingStart[t], descriptionStart[t]), then description hits
+    private final int[] descriptionStart;
+    private final int[] postingEntries;
+    private final int[] entryTermStart; // Entry e's terms are entryTerms[entryTermStart[e] .. entryTermStart[e + 1])
+    private final int[] entryTerms;
+    private final byte[] entryTermWeights;
+    private final Map<String, int[]> deletions; // Term or one-letter deletion -> term ids
+    
+    // Query scratch, reused under the lock; stamps avoid clearing per query
+    private final float[] scores;
+    private final int[] entryStamp, candidates;
+    private final float[] termFactors;
+    private final int[] termStamp;
+    private int stamp;
+    
+    MenuSearchIndex(List<MenuEntry> entryList) {
+        entries = entryList.toArray(new MenuEntry[0]);
+        nameLengths = new int[entries.length];
+        Map<String, Integer> termIds = new HashMap<>();
+        List<long[]> postings = new ArrayList<>(); // Per temporary term id: [size, sort keys...]
+        entryTermStart = new int[entries.length + 1];
+        int[] forwardTerms = new int[entries.length * 4];
+        byte[] forwardWeights = new byte[forwardTerms.length];
+        int forwardSize = 0;
+        for (int e = 0; e < entries.length; e++) {
+            Meal meal = entries[e].getMeal();
+            nameLengths[e] = meal.getName().length();
+            Map<String, Byte> weights = new LinkedHashMap<>();
+            for (String term : tokenize(meal.getName())) {
+                weights.put(term, NAME_WEIGHT);
+            }
+            for (String term : tokenize(meal.getDescription())) {
+                weights.putIfAbsent(term, DESCRIPTION_WEIGHT);
+            }
+            for (Map.Entry<String, Byte> w : weights.entrySet()) {
+                Integer id = termIds.get(w.getKey());
+                if (id == null) {
+                    id = postings.size();
+                    termIds.put(w.getKey(), id);
+                    postings.add(new long[5]);
+                }
+                long[] list = postings.get(id);
+                if (list[0] + 1 == list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    postings.set(id, list);
+                }
+                list[(int) ++list[0]] = rankKey(w.getValue(), nameLengths[e], e);
+                if (forwardSize == forwardTerms.length) {
+                    forwardTerms = Arrays.copyOf(forwardTerms, forwardSize * 2);
+                    forwardWeights = Arrays.copyOf(forwardWeights, forwardSize * 2);
+                }
+                forwardTerms[forwardSize] = id; // Remapped to sorted ids below
+                forwardWeights[forwardSize++] = w.getValue();
+            }
+            entryTermStart[e + 1] = forwardSize;
+        }
+        
+        terms = termIds.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] sortedId = new int[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            sortedId[termIds.get(terms[t])] = t;
+        }
+        entryTerms = new int[forwardSize];
+        entryTermWeights = Arrays.copyOf(forwardWeights, forwardSize);
+        for (int i = 0; i < forwardSize; i++) {
+            entryTerms[i] = sortedId[forwardTerms[i]];
+        }
+        
+        postingStart = new int[terms.length + 1];
+        descriptionStart = new int[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            postingStart[t + 1] = postingStart[t] + (int) postings.get(termIds.get(terms[t]))[0];
+        }
+        postingEntries = new int[postingStart[terms.length]];
+        Map<String, int[]> deletionLists = new HashMap<>(); // key -> [size, term ids...]
+        for (int t = 0; t < terms.length; t++) {
+            long[] list = postings.get(termIds.get(terms[t]));
+            int size = (int) list[0];
+            Arrays.sort(list, 1, size + 1);
+            descriptionStart[t] = postingStart[t] + size;
+            for (int i = 0; i < size; i++) {
+                long key = list[i + 1];
+                postingEntries[postingStart[t] + i] = (int) key;
+                if (key >>> 62 != 0 && descriptionStart[t] == postingStart[t] + size) {
+                    descriptionStart[t] = postingStart[t] + i;
+                }
+            }
+            String term = terms[t];
+            if (term.length() >= MIN_TYPO_LENGTH - 1) {
+                addDeletion(deletionLists, term, t);
+                for (int i = 0; i < term.length(); i++) {
+                    addDeletion(deletionLists, term.substring(0, i) + term.substring(i + 1), t);
+                }
+            }
+        }
+        deletions = new HashMap<>(deletionLists.size() * 2);
+        for (Map.Entry<String, int[]> e : deletionLists.entrySet()) {
+            deletions.put(e.getKey(), Arrays.copyOfRange(e.getValue(), 1, 1 + e.getValue()[0]));
+        }
+        
+        scores = new float[entries.length];
+        entryStamp = new int[entries.length];
+        candidates = new int[entries.length];
+        termFactors = new float[terms.length];
+        termStamp = new int[terms.length];
     }
     
-    public boolean isEmpty() {
-        return items.isEmpty();
+    public static MenuSearchIndex build(MenuManager menuManager) {
+        return new MenuSearchIndex(MenuEntry.listAll(menuManager));
     }
     
-    public List<Meal> getItems() {
-        return Collections.unmodifiableList(items);
+    public int size() { return entries.length; }
+    
+    // Sorts name hits first, then by name length, then by entry
+    private static long rankKey(byte weight, int nameLength, int entry) {
+        long tier = weight == NAME_WEIGHT ? 0 : 1;
+        return tier << 62 | (long) Math.min(nameLength, 0x3FFFFFFF) << 32 | entry;
     }
     
-    public double getTotalPrice() {
-        return items.stream().mapToDouble(Meal::getPrice).sum();
+    private static void addDeletion(Map<String, int[]> deletionLists, String key, int term) {
+        int[] list = deletionLists.get(key);
+        if (list == null) {
+            list = new int[3];
+            deletionLists.put(key, list);
+        } else if (list[list[0]] == term) {
+            return; // Same deletion from a doubled letter
+        }
+        if (list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            deletionLists.put(key, list);
+        }
+        list[++list[0]] = term;
     }
-}
-
-class ItemUnavailableException extends Exception {
-    public ItemUnavailableException(String message) {
-        super(message);
+    
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
     }
-}
-
-// ================== ORDER PROCESSING ==================
-class Order {
-    public enum OrderStatus {
-        PREPARING("👨‍🍳 Preparing your order"),
-        COOKING("🔥 Cooking in progress"),
-        PACKAGING("📦 Packaging your meal"),
-        READY("✅ Order ready for delivery"),
-        DELIVERED("🛵 Order delivered!");
-        
-        private final String displayText;
+    
+    // Best matches first; an empty query returns nothing
+    public synchronized List<MenuEntry> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        List<TokenMatch> matches = new ArrayList<>();
+        for (int q = 0; q < tokens.size() && q < MAX_QUERY_TOKENS; q++) {
+            TokenMatch match = matchToken(tokens.get(q));
+            if (match.size == 0) {
+                return new ArrayList<>();
+            }
+            matches.add(match);
+        }
+        if (matches.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        stamp++;
+        return matches.size() == 1 ? searchOne(matches.get(0), limit) : searchAll(matches, limit);
+    }
+    
+    // Score levels best first: kind 0-2 name hits, then kind 0-2 description hits
+    // (exact description 1.0 sits between typo name 1.2 and prefix description 0.6)
+    private List<MenuEntry> searchOne(TokenMatch match, int limit) {
+        List<MenuEntry> results = new ArrayList<>(limit);
+        int[] cursor = new int[match.size];
+        int[] end = new int[match.size];
+        for (int level = 0; level < 2 * FACTORS.length && results.size() < limit; level++) {
+            boolean names = level < FACTORS.length;
+            int kind = level % FACTORS.length;
+            for (int i = 0; i < match.size; i++) {
+                int t = match.terms[i];
+                boolean inLevel = match.kinds[i] == kind;
+                cursor[i] = !inLevel ? 0 : names ? postingStart[t] : descriptionStart[t];
+                end[i] = !inLevel ? 0 : names ? descriptionStart[t] : postingStart[t + 1];
+            }
+            // Merge the level's lists, each already in ranking order
+            while (results.size() < limit) {
+                int best = -1;
+                for (int i = 0; i < match.size; i++) {
+                    if (cursor[i] < end[i] && (best < 0 || ranksBefore(postingEntries[cursor[i]], postingEntries[cursor[best]]))) {
+                        best = i;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                int e = postingEntries[cursor[best]++];
+                if (entryStamp[e] != stamp) {
+                    entryStamp[e] = stamp;
+                    results.add(entries[e]);
+                }
+            }
+        }
+        return results;
+    }
+    
+    private List<MenuEntry> searchAll(List<TokenMatch> matches, int limit) {
+        matches.sort((a, b) -> Long.compare(a.postings, b.postings));
+        TokenMatch rarest = matches.get(0);
+        int count = 0;
+        for (int i = 0; i < rarest.size; i++) {
+            int t = rarest.terms[i];
+            float factor = FACTORS[rarest.kinds[i]];
+            for (int p = postingStart[t]; p < postingStart[t + 1]; p++) {
+                int e = postingEntries[p];
+                float score = factor * (p < descriptionStart[t] ? NAME_WEIGHT : DESCRIPTION_WEIGHT);
+                if (entryStamp[e] != stamp) {
+                    entryStamp[e] = stamp;
+                    scores[e] = score;
+                    candidates[count++] = e;
+                } else if (score > scores[e]) {
+                    scores[e] = score;
+                }
+            }
+        }
         
-        OrderStatus(String displayText) {
-            this.displayText = displayText;
+        for (int m = 1; m < matches.size() && count > 0; m++) {
+            TokenMatch match = matches.get(m);
+            int termMark = stamp * MAX_QUERY_TOKENS + m; // Unique per query and word
+            for (int i = 0; i < match.size; i++) {
+                int t = match.terms[i];
+                float factor = FACTORS[match.kinds[i]];
+                if (termStamp[t] != termMark || factor > termFactors[t]) {
+                    termStamp[t] = termMark;
+                    termFactors[t] = factor;
+                }
+            }
+            int kept = 0;
+            for (int c = 0; c < count; c++) {
+                int e = candidates[c];
+                float best = 0;
+                for (int k = entryTermStart[e]; k < entryTermStart[e + 1]; k++) {
+                    int t = entryTerms[k];
+                    if (termStamp[t] == termMark) {
+                        best = Math.max(best, termFactors[t] * entryTermWeights[k]);
+                    }
+                }
+                if (best > 0) {
+                    scores[e] += best;
+                    candidates[kept++] = e;
+                }
+            }
+            count = kept;
         }
         
-        public String getDisplayText() {
-            return displayText;
+        // Keep the best `limit` entries in a small array sorted best first
+        int[] top = new int[limit];
+        int topSize = 0;
+        for (int c = 0; c < count; c++) {
+            int e = candidates[c];
+            if (topSize == limit && !scoresBefore(e, top[topSize - 1])) {
+                continue;
+            }
+            int pos = topSize == limit ? topSize - 1 : topSize++;
+            while (pos > 0 && scoresBefore(e, top[pos - 1])) {
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            top[pos] = e;
         }
+        List<MenuEntry> results = new ArrayList<>(topSize);
+        for (int i = 0; i < topSize; i++) {
+            results.add(entries[top[i]]);
+        }
+        return results;
     }
     
-    private static int nextOrderId = 1000;
-    private final int orderId;
-    private final List<Meal> items;
-    private final Restaurant restaurant;
-    private OrderStatus status;
-    private final Date orderTime;
+    private boolean scoresBefore(int a, int b) {
+        return scores[a] != scores[b] ? scores[a] > scores[b] : ranksBefore(a, b);
+    }
     
-    public Order(List<Meal> items, Restaurant restaurant) {
-        this.orderId = nextOrderId++;
-        this.items = new ArrayList<>(items);
-        this.restaurant = restaurant;
-        this.status = OrderStatus.PREPARING;
-        this.orderTime = new Date();
+    private boolean ranksBefore(int a, int b) {
+        return nameLengths[a] != nameLengths[b] ? nameLengths[a] < nameLengths[b] : a < b;
     }
     
-    public int getOrderId() { return orderId; }
-    public List<Meal> getItems() { return Collections.unmodifiableList(items); }
-    public Restaurant getRestaurant() { return restaurant; }
-    public OrderStatus getStatus() { return status; }
-    public void setStatus(OrderStatus status) { this.status = status; }
-    public Date getOrderTime() { return orderTime; }
+    private TokenMatch matchToken(String token) {
+        TokenMatch match = new TokenMatch();
+        int t = Arrays.binarySearch(terms, token);
+        int first = t >= 0 ? t : -t - 1;
+        if (t >= 0) {
+            match.add(t, 0);
+            first++;
+        }
+        for (int p = first; p < terms.length && p < first + MAX_PREFIX_TERMS && terms[p].startsWith(token); p++) {
+            match.add(p, 1);
+        }
+        if (token.length() >= MIN_TYPO_LENGTH) {
+            addTypoTerms(match, token, token);
+            for (int i = 0; i < token.length(); i++) {
+                addTypoTerms(match, token, token.substring(0, i) + token.substring(i + 1));
+            }
+        }
+        for (int i = 0; i < match.size; i++) {
+            match.postings += postingStart[match.terms[i] + 1] - postingStart[match.terms[i]];
+        }
+        return match;
+    }
+    
+    // Prefix matches already cover terms that merely extend the word
+    private void addTypoTerms(TokenMatch match, String token, String key) {
+        int[] candidates = deletions.get(key);
+        if (candidates != null) {
+            for (int t : candidates) {
+                if (!terms[t].startsWith(token) && withinOneEdit(token, terms[t])) {
+                    match.add(t, 2);
+                }
+            }
+        }
+    }
     
-    public double getTotalPrice() {
-        return items.stream().mapToDouble(Meal::getPrice).sum() + restaurant.getDeliveryFee();
+    // One insertion, deletion, substitution or adjacent transposition apart
+    static boolean withinOneEdit(String a, String b) {
+        int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > 1) {
+            return false;
+        }
+        int i = 0;
+        while (i < la && i < lb && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        if (la == lb) {
+            if (a.regionMatches(i + 1, b, i + 1, la - i - 1)) {
+                return true;
+            }
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i)
+                && a.regionMatches(i + 2, b, i + 2, la - i - 2);
+        }
+        return la > lb ? a.regionMatches(i + 1, b, i, lb - i) : b.regionMatches(i + 1, a, i, la - i);
     }
 }
 
-class OrderProcessor extends Thread {
-    public interface OrderUpdateListener {
-        void onOrderStarted(Order order);
-        void onOrderProgress(Order order, int progress);
-        void onOrderCompleted(Order order);
+// ================== MENU FILTERS ==================
+// Inclusive bounds on price, calories and prep time plus a set of
+// categories; unset bounds are open
+final class MenuFilter {
+    long minPricePaise = 0, maxPricePaise = Long.MAX_VALUE;
+    int minCalories = 0, maxCalories = Integer.MAX_VALUE;
+    int minPrepSeconds = 0, maxPrepSeconds = Integer.MAX_VALUE;
+    final EnumSet<MealCategory> categories = EnumSet.allOf(MealCategory.class);
+    
+    public MenuFilter price(long minPaise, long maxPaise) {
+        minPricePaise = minPaise;
+        maxPricePaise = maxPaise;
+        return this;
     }
     
-    private final Order order;
-    private final OrderUpdateListener listener;
+    public MenuFilter calories(int min, int max) {
+        minCalories = min;
+        maxCalories = max;
+        return this;
+    }
     
-    public OrderProcessor(Order order, OrderUpdateListener listener) {
-        this.order = order;
-        this.listener = listener;
+    public MenuFilter prepSeconds(int min, int max) {
+        minPrepSeconds = min;
+        maxPrepSeconds = max;
+        return this;
     }
     
-    @Override
-    public void run() {
-        listener.onOrderStarted(order);
+    public MenuFilter only(MealCategory category) {
+        categories.clear();
+        categories.add(category);
+        return this;
+    }
+    
+    boolean matches(Meal meal) {
+        return meal.getPricePaise() >= minPricePaise && meal.getPricePaise() <= maxPricePaise
+            && meal.getCalories() >= minCalories && meal.getCalories() <= maxCalories
+            && meal.getPrepTimeSeconds() >= minPrepSeconds && meal.getPrepTimeSeconds() <= maxPrepSeconds
+            && categories.contains(meal.getCategory());
+    }
+}
+
+// Range queries over the whole catalog from sorted primitive columns. Each
+// category keeps its entries sorted by price, and there are copies sorted
+// by calories and by prep time; every copy stores all four columns in its
+// own order, so a bound is a binary search and checking the other bounds
+// reads memory sequentially. Results come cheapest first. A query either
+// walks the price-ordered category lists and stops once it has enough
+// results, or scans the narrowest calorie or prep range and keeps the
+// cheapest, whichever the range sizes say is less work.
+final class MenuRangeIndex {
+    // Entries in one order, with their columns laid out in that same order
+    private static final class Columns {
+        final int[] ids;
+        final long[] price;
+        final int[] calories, prepSeconds;
+        final byte[] category;
         
-        // Simulate order processing
-        for (int progress = 0; progress <= 100; progress += 10) {
-            try {
-                Thread.sleep(800); // Simulate time for each step
-                
-                // Update status at certain progress points
-                if (progress == 30) {
-                    order.setStatus(Order.OrderStatus.COOKING);
-                } else if (progress == 60) {
-                    order.setStatus(Order.OrderStatus.PACKAGING);
-                } else if (progress == 90) {
-                    order.setStatus(Order.OrderStatus.READY);
-                }
-                
-                listener.onOrderProgress(order, progress);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        Columns(int[] ids, MenuEntry[] entries) {
+            this.ids = ids;
+            price = new long[ids.length];
+            calories = new int[ids.length];
+            prepSeconds = new int[ids.length];
+            category = new byte[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                Meal meal = entries[ids[i]].getMeal();
+                price[i] = meal.getPricePaise();
+                calories[i] = meal.getCalories();
+                prepSeconds[i] = meal.getPrepTimeSeconds();
+                category[i] = (byte) meal.getCategory().ordinal();
             }
         }
         
-        order.setStatus(Order.OrderStatus.DELIVERED);
-        listener.onOrderCompleted(order);
+        boolean matches(int i, MenuFilter f, int categoryMask) {
+            return price[i] >= f.minPricePaise && price[i] <= f.maxPricePaise
+                && calories[i] >= f.minCalories && calories[i] <= f.maxCalories
+                && prepSeconds[i] >= f.minPrepSeconds && prepSeconds[i] <= f.maxPrepSeconds
+                && (categoryMask & 1 << category[i]) != 0;
+        }
+    }
+    
+    private final MenuEntry[] entries;
+    private final Columns[] byCategory; // By category ordinal, cheapest first
+    private final Columns byCalories, byPrep;
+    
+    MenuRangeIndex(List<MenuEntry> entryList) {
+        entries = entryList.toArray(new MenuEntry[0]);
+        int n = entries.length;
+        long[] prices = new long[n];
+        long[] priceKeys = new long[n];
+        long[] calorieKeys = new long[n];
+        long[] prepKeys = new long[n];
+        int[] categorySizes = new int[MealCategory.values().length];
+        for (int e = 0; e < n; e++) {
+            Meal meal = entries[e].getMeal();
+            prices[e] = meal.getPricePaise();
+            calorieKeys[e] = (long) meal.getCalories() << 32 | e;
+            prepKeys[e] = (long) meal.getPrepTimeSeconds() << 32 | e;
+            categorySizes[meal.getCategory().ordinal()]++;
+        }
+        
+        // Prices need all 64 bits, so each is keyed by its rank among the sorted prices instead
+        long[] sortedPrices = prices.clone();
+        Arrays.sort(sortedPrices);
+        for (int e = 0; e < n; e++) {
+            priceKeys[e] = (long) lowerBound(sortedPrices, prices[e]) << 32 | e;
+        }
+        int[] order = idsSortedBy(priceKeys);
+        int[][] categoryIds = new int[categorySizes.length][];
+        for (int c = 0; c < categoryIds.length; c++) {
+            categoryIds[c] = new int[categorySizes[c]];
+            categorySizes[c] = 0;
+        }
+        for (int e : order) {
+            int c = entries[e].getMeal().getCategory().ordinal();
+            categoryIds[c][categorySizes[c]++] = e;
+        }
+        byCategory = new Columns[categoryIds.length];
+        for (int c = 0; c < categoryIds.length; c++) {
+            byCategory[c] = new Columns(categoryIds[c], entries);
+        }
+        byCalories = new Columns(idsSortedBy(calorieKeys), entries);
+        byPrep = new Columns(idsSortedBy(prepKeys), entries);
+    }
+    
+    public static MenuRangeIndex build(MenuManager menuManager) {
+        return new MenuRangeIndex(MenuEntry.listAll(menuManager));
+    }
+    
+    public int size() { return entries.length; }
+    
+    // Keys pack a value above an entry id, so sorting them orders by value then entry
+    private static int[] idsSortedBy(long[] keys) {
+        Arrays.sort(keys);
+        int[] ids = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            ids[i] = (int) keys[i];
+        }
+        return ids;
     }
-}
\ No newline at end of file
+    
+    // First index whose value is >= key
+    private static int lowerBound(int[] sorted, long key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private static int lowerBound(long[] sorted, long key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    // Up to limit matches, cheapest first
+    public List<MenuEntry> find(MenuFilter f, int limit) {
+        List<MenuEntry> results = new ArrayList<>();
+        if (limit <= 0 || entries.length == 0) {
+            return results;
+        }
+        int categoryMask = 0;
+        int[] from = new int[byCategory.length], to = new int[byCategory.length];
+        long priceRange = 0;
+        for (MealCategory c : f.categories) {
+            int k = c.ordinal();
+            categoryMask |= 1 << k;
+            long[] prices = byCategory[k].price;
+            from[k] = lowerBound(prices, f.minPricePaise);
+            to[k] = f.maxPricePaise == Long.MAX_VALUE ? prices.length : lowerBound(prices, f.maxPricePaise + 1);
+            priceRange += Math.max(0, to[k] - from[k]);
+        }
+        int calFrom = lowerBound(byCalories.calories, f.minCalories);
+        int calTo = lowerBound(byCalories.calories, (long) f.maxCalories + 1);
+        int prepFrom = lowerBound(byPrep.prepSeconds, f.minPrepSeconds);
+        int prepTo = lowerBound(byPrep.prepSeconds, (long) f.maxPrepSeconds + 1);
+        long calRange = Math.max(0, calTo - calFrom), prepRange = Math.max(0, prepTo - prepFrom);
+        if (priceRange == 0 || calRange == 0 || prepRange == 0) {
+            return results;
+        }
+        
+        // Walking by price visits about limit / (share of entries passing the other bounds)
+        double otherShare = (double) calRange / entries.length * prepRange / entries.length;
+        double walkCost = Math.min(priceRange, limit / otherShare);
+        long scanSize = Math.min(calRange, prepRange);
+        if (walkCost <= scanSize) {
+            // Merge the category lists by price
+            while (results.size() < limit) {
+                int best = -1;
+                for (int c = 0; c < from.length; c++) {
+                    if (from[c] < to[c] && (best < 0 || cheaper(byCategory[c], from[c], byCategory[best], from[best]))) {
+                        best = c;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                int i = from[best]++;
+                if (byCategory[best].matches(i, f, categoryMask)) {
+                    results.add(entries[byCategory[best].ids[i]]);
+                }
+            }
+            return results;
+        }
+        
+        // Scan the narrowest column range, keeping the cheapest `limit` positions in a sorted array
+        Columns scan = calRange <= prepRange ? byCalories : byPrep;
+        int start = calRange <= prepRange ? calFrom : prepFrom;
+        int end = start + (int) scanSize;
+        int[] top = new int[limit];
+        int topSize = 0;
+        for (int i = start; i < end; i++) {
+            if (!scan.matches(i, f, categoryMask) || topSize == limit && !cheaper(scan, i, scan, top[topSize - 1])) {
+                continue;
+            }
+            int pos = topSize == limit ? topSize - 1 : topSize++;
+            while (pos > 0 && cheaper(scan, i, scan, top[pos - 1])) {
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            top[pos] = i;
+        }
+        for (int i = 0; i < topSize; i++) {
+            results.add(entries[scan.ids[top[i]]]);
+        }
+        return results;
+    }
+    
+    private static boolean cheaper(Columns a, int i, Columns b, int j) {
+        return a.price[i] != b.price[j] ? a.price[i] < b.price[j] : a.ids[i] < b.ids[j];
+    }
+}
+
+// ================== CART SYSTEM ==================
+// One line per meal with a quantity. Lines are found by meal id in O(1) and
+// the price, calorie and item totals are kept up to date on every change.
+// Lines are looked up by the meal's dense MealRegistry index; removing a
+// line moves the last line into its place, so line order is not preserved.
+class Cart {
+    private final List<CartLine> lines = new ArrayList<>();
+    private int[] positions = new int[0]; // Meal index -> position in lines + 1, 0 = no line
+    private long totalPaise;
+    private int totalCalories;
+    private int itemCount;
+    
+    // Stock is reserved by OrderService.Session before a unit gets here
+    public void addItem(Meal item) throws ItemUnavailableException {
+        if (!item.isOnMenu()) {
+            throw new ItemUnavailableException(item.getName() + " is currently unavailable!");
+        }
+        int index = positionOf(item);
+        if (index < 0) {
+            addLine(new CartLine(item, 1));
+        } else {
+            lines.set(index, lines.get(index).withQuantity(lines.get(index).getQuantity() + 1));
+        }
+        totalPaise = Money.add(totalPaise, item.getPricePaise());
+        totalCalories += item.getCalories();
+        itemCount++;
+    }
+    
+    // Puts back a line from a saved cart, without availability checks
+    void restoreLine(Meal item, int quantity) {
+        int index = positionOf(item);
+        if (index < 0) {
+            addLine(new CartLine(item, quantity));
+        } else {
+            lines.set(index, lines.get(index).withQuantity(lines.get(index).getQuantity() + quantity));
+        }
+        totalPaise = Money.add(totalPaise, Money.multiply(item.getPricePaise(), quantity));
+        totalCalories += item.getCalories() * quantity;
+        itemCount += quantity;
+    }
+    
+    // Removes one unit of the meal; the line goes away with its last unit
+    public void removeItem(Meal item) {
+        int index = positionOf(item);
+        if (index < 0) {
+            return;
+        }
+        CartLine line = lines.get(index);
+        if (line.getQuantity() > 1) {
+            lines.set(index, line.withQuantity(line.getQuantity() - 1));
+        } else {
+            CartLine last = lines.remove(lines.size() - 1);
+            if (last != line) {
+                lines.set(index, last);
+                positions[last.getMeal().getIndex()] = index + 1;
+            }
+            positions[item.getIndex()] = 0;
+        }
+        totalPaise = Money.subtract(totalPaise, item.getPricePaise());
+        totalCalories -= item.getCalories();
+        itemCount--;
+    }
+    
+    public void clear() {
+        for (CartLine line : lines) {
+            positions[line.getMeal().getIndex()] = 0;
+        }
+        lines.clear();
+        totalPaise = 0;
+        totalCalories = 0;
+        itemCount = 0;
+    }
+    
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+    
+    public boolean contains(Meal item) {
+        return positionOf(item) >= 0;
+    }
+    
+    public int indexOf(Meal item) {
+        return positionOf(item);
+    }
+    
+    public int getQuantity(Meal item) {
+        int index = positionOf(item);
+        return index < 0 ? 0 : lines.get(index).getQuantity();
+    }
+    
+    private int positionOf(Meal item) {
+        int mealIndex = item.getIndex();
+        return mealIndex < positions.length ? positions[mealIndex] - 1 : -1;
+    }
+    
+    private void addLine(CartLine line) {
+        int mealIndex = line.getMeal().getIndex();
+        if (mealIndex >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(mealIndex + 1, positions.length * 2));
+        }
+        lines.add(line);
+        positions[mealIndex] = lines.size();
+    }
+    
+    public int getLineCount() { return lines.size(); }
+    public CartLine getLine(int index) { return lines.get(index); }
+    
+    public List<CartLine> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+    
+    public long getTotalPaise() { return totalPaise; }
+    public int getTotalCalories() { return totalCalories; }
+    public int getItemCount() { return itemCount; }
+}
+
+class CartLine {
+    private final Meal meal;
+    private final int quantity;
+    
+    public CartLine(Meal meal, int quantity) {
+        this.meal = meal;
+        this.quantity = quantity;
+    }
+    
+    public CartLine withQuantity(int quantity) {
+        return new CartLine(meal, quantity);
+    }
+    
+    public Meal getMeal() { return meal; }
+    public int getQuantity() { return quantity; }
+    public long getLinePaise() { return Money.multiply(meal.getPricePaise(), quantity); }
+    public int getLineCalories() { return meal.getCalories() * quantity; }
+}
+
+class ItemUnavailableException extends Exception {
+    public ItemUnavailableException(String message) {
+        super(message);
+    }
+}
+
+class EmptyCartException extends Exception {
+    public EmptyCartException(String message) {
+        super(message);
+    }
+}
+
+// ================== MONEY ==================
+// Amounts are whole paise in a long: exact, and no boxing or streams when
+// summing. Overflow throws instead of silently wrapping.
+final class Money {
+    public static final long PAISE_PER_RUPEE = 100;
+    
+    private Money() {}
+    
+    public static long ofRupees(long rupees) {
+        return Math.multiplyExact(rupees, PAISE_PER_RUPEE);
+    }
+    
+    public static long add(long a, long b) { return Math.addExact(a, b); }
+    public static long subtract(long a, long b) { return Math.subtractExact(a, b); }
+    public static long multiply(long paise, int quantity) { return Math.multiplyExact(paise, (long) quantity); }
+    
+    // Share of an amount in basis points (1800 = 18%), rounded half up to the paisa
+    public static long percentOf(long paise, int basisPoints) {
+        long scaled = Math.multiplyExact(paise, (long) basisPoints);
+        return scaled >= 0 ? (scaled + 5_000) / 10_000 : -((-scaled + 5_000) / 10_000);
+    }
+    
+    public static long withTax(long paise, int taxBasisPoints) {
+        return add(paise, percentOf(paise, taxBasisPoints));
+    }
+    
+    // Parses "349", "349.5" or "349.50" without going through double. Amounts
+    // come from the catalog and the user, so signs are rejected like any other
+    // non-digit.
+    public static long parse(String rupees) {
+        String text = rupees.trim();
+        int dot = text.indexOf('.');
+        String whole = dot < 0 ? text : text.substring(0, dot);
+        String fraction = dot < 0 ? "" : text.substring(dot + 1);
+        // Digits only on both sides: parseLong/parseInt would accept a sign
+        if (!isDigits(whole) || (dot >= 0 && (fraction.length() > 2 || !isDigits(fraction)))) {
+            throw new NumberFormatException("Not a rupee amount: " + rupees);
+        }
+        try {
+            long paise = ofRupees(Long.parseLong(whole));
+            if (!fraction.isEmpty()) {
+                int value = Integer.parseInt(fraction);
+                paise = add(paise, fraction.length() == 1 ? value * 10 : value);
+            }
+            return paise;
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Rupee amount too large: " + rupees);
+        }
+    }
+    
+    private static boolean isDigits(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Formats as ₹1,23,456.78 (Indian digit grouping)
+    public static String format(long paise) {
+        return appendTo(new StringBuilder(16), paise).toString();
+    }
+    
+    public static StringBuilder appendTo(StringBuilder sb, long paise) {
+        if (paise < 0) {
+            sb.append('-');
+            paise = -paise;
+        }
+        sb.append('₹');
+        long rupees = paise / PAISE_PER_RUPEE;
+        int fraction = (int) (paise % PAISE_PER_RUPEE);
+        String digits = Long.toString(rupees);
+        int len = digits.length();
+        for (int i = 0; i < len; i++) {
+            sb.append(digits.charAt(i));
+            int remaining = len - 1 - i;
+            if (remaining >= 3 && (remaining - 3) % 2 == 0) {
+                sb.append(',');
+            }
+        }
+        return sb.append('.').append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+}
+
+// ================== ORDER PROCESSING ==================
+class Order {
+    public enum OrderStatus {
+        PREPARING("👨‍🍳 Preparing your order"),
+        COOKING("🔥 Cooking in progress"),
+        PACKAGING("📦 Packaging your meal"),
+        READY("✅ Order ready for delivery"),
+        DELIVERED("🛵 Order delivered!");
+        
+        private final String displayText;
+        
+        OrderStatus(String displayText) {
+            this.displayText = displayText;
+        }
+        
+        public String getDisplayText() {
+            return displayText;
+        }
+    }
+    
+    private static final AtomicInteger nextOrderId = new AtomicInteger(1000);
+    private final int orderId;
+    private final List<CartLine> lines;
+    private final Restaurant restaurant;
+    private volatile OrderStatus status;
+    private final long[] statusTimes = new long[OrderStatus.values().length]; // Written before status is published
+    private final Date orderTime;
+    private volatile long estimatedDeliveryAt; // Maintained by EtaEngine, 0 until the order starts
+    private volatile Rider rider; // Set once a rider is dispatched
+    
+    public Order(List<CartLine> lines, Restaurant restaurant) {
+        this.orderId = nextOrderId.getAndIncrement();
+        this.lines = new ArrayList<>(lines);
+        this.restaurant = restaurant;
+        this.orderTime = new Date();
+        this.statusTimes[OrderStatus.PREPARING.ordinal()] = orderTime.getTime();
+        this.status = OrderStatus.PREPARING;
+    }
+    
+    public static void continueAfter(int lastOrderId) {
+        nextOrderId.accumulateAndGet(lastOrderId + 1, Math::max);
+    }
+    
+    public int getOrderId() { return orderId; }
+    public List<CartLine> getLines() { return Collections.unmodifiableList(lines); }
+    public Restaurant getRestaurant() { return restaurant; }
+    public OrderStatus getStatus() { return status; }
+    public void setStatus(OrderStatus status) {
+        long now = System.currentTimeMillis();
+        OrderStatus previous = this.status;
+        if (previous != status) {
+            OrderMetrics.getInstance().recordStage(previous, now - statusTimes[previous.ordinal()]);
+        }
+        statusTimes[status.ordinal()] = now;
+        this.status = status;
+    }
+    
+    // When the order entered the given status, or 0 if it has not yet
+    public long getStatusTime(OrderStatus status) { return statusTimes[status.ordinal()]; }
+    public Date getOrderTime() { return orderTime; }
+    public long getEstimatedDeliveryAt() { return estimatedDeliveryAt; }
+    void setEstimatedDeliveryAt(long estimatedDeliveryAt) { this.estimatedDeliveryAt = estimatedDeliveryAt; }
+    public Rider getRider() { return rider; }
+    void setRider(Rider rider) { this.rider = rider; }
+    
+    public int getItemCount() {
+        int count = 0;
+        for (CartLine line : lines) {
+            count += line.getQuantity();
+        }
+        return count;
+    }
+    
+    public long getTotalPrepSeconds() {
+        long total = 0;
+        for (CartLine line : lines) {
+            total += (long) line.getMeal().getPrepTimeSeconds() * line.getQuantity();
+        }
+        return total;
+    }
+    
+    public int getLongestPrepSeconds() {
+        int longest = 0;
+        for (CartLine line : lines) {
+            longest = Math.max(longest, line.getMeal().getPrepTimeSeconds());
+        }
+        return longest;
+    }
+    
+    public long getTotalPaise() {
+        long total = restaurant.getDeliveryFeePaise();
+        for (CartLine line : lines) {
+            total = Money.add(total, line.getLinePaise());
+        }
+        return total;
+    }
+}
+
+// Drives one order through the restaurant's kitchen: items are cooked on
+// the kitchen's stations, packaging takes one step, then the order waits
+// for a rider from RiderDispatcher and is delivered when the trip ends.
+// Progress: 0 placed, 10 cooking started, 10-70 items cooked, 80 packaging,
+// 90 ready, 95 rider assigned, 100 delivered.
+class OrderProcessor implements Kitchen.PrepListener {
+    public interface OrderUpdateListener {
+        void onOrderStarted(Order order);
+        void onOrderProgress(Order order, int progress);
+        void onOrderCompleted(Order order);
+        
+        // Called after each batch of coalesced updates, when delivered through an OrderEventBus
+        default void onBatchDelivered() {}
+    }
+    
+    static final long STEP_MILLIS = 800; // Simulated time for packaging
+    
+    private final Order order;
+    private final OrderUpdateListener listener;
+    private final EtaEngine.Tracker eta;
+    private final AtomicBoolean cookingStarted = new AtomicBoolean();
+    private final AtomicInteger itemsCooked = new AtomicInteger();
+    
+    public OrderProcessor(Order order, OrderUpdateListener listener) {
+        this.order = order;
+        this.listener = listener;
+        this.eta = EtaEngine.forRestaurant(order.getRestaurant()).track(order);
+    }
+    
+    public void start() {
+        KitchenScheduler.schedule(this::begin, 0);
+    }
+    
+    private void begin() {
+        eta.submitted();
+        listener.onOrderStarted(order);
+        if (order.getItemCount() == 0) {
+            packageOrder();
+        } else {
+            Kitchen.forRestaurant(order.getRestaurant()).submit(order, this);
+        }
+    }
+    
+    @Override
+    public void onItemStarted(Meal meal) {
+        if (cookingStarted.compareAndSet(false, true)) {
+            order.setStatus(Order.OrderStatus.COOKING);
+            listener.onOrderProgress(order, 10);
+        }
+    }
+    
+    @Override
+    public void onItemCooked(Meal meal) {
+        eta.itemCooked(meal);
+        int cooked = itemsCooked.incrementAndGet();
+        int total = order.getItemCount();
+        listener.onOrderProgress(order, 10 + 60 * cooked / total);
+        if (cooked == total) {
+            packageOrder();
+        }
+    }
+    
+    private void packageOrder() {
+        order.setStatus(Order.OrderStatus.PACKAGING);
+        eta.packaging();
+        listener.onOrderProgress(order, 80);
+        KitchenScheduler.schedule(() -> {
+            order.setStatus(Order.OrderStatus.READY);
+            eta.ready();
+            listener.onOrderProgress(order, 90);
+            RiderDispatcher.getInstance().requestRider(order, (rider, tripMillis) -> {
+                order.setRider(rider);
+                eta.riderAssigned(tripMillis);
+                listener.onOrderProgress(order, 95);
+                KitchenScheduler.schedule(() -> {
+                    order.setStatus(Order.OrderStatus.DELIVERED);
+                    eta.delivered();
+                    listener.onOrderProgress(order, 100);
+                    listener.onOrderCompleted(order);
+                }, tripMillis);
+            });
+        }, STEP_MILLIS);
+    }
+}
+
+// ================== KITCHEN ==================
+// Per-restaurant kitchen with a fixed number of stations. Every unit of
+// every pending order is a prep task in one priority queue (oldest order
+// first, longest prep first within an order), so one order's items cook in
+// parallel across free stations and order durations follow real capacity.
+// Cooking is a timed task on KitchenScheduler; no thread waits on a station.
+final class Kitchen {
+    static final int DEFAULT_STATIONS = Integer.getInteger("foodflex.kitchen.stations", 4);
+    static final long MILLIS_PER_PREP_SECOND = Long.getLong("foodflex.kitchen.millisPerPrepSecond", 1000);
+    private static final ConcurrentHashMap<String, Kitchen> KITCHENS = new ConcurrentHashMap<>();
+    
+    interface PrepListener {
+        void onItemStarted(Meal meal);
+        void onItemCooked(Meal meal);
+    }
+    
+    private static final class PrepTask implements Comparable<PrepTask> {
+        final long orderTime;
+        final int orderId;
+        final Meal meal;
+        final PrepListener listener;
+        
+        PrepTask(Order order, Meal meal, PrepListener listener) {
+            this.orderTime = order.getOrderTime().getTime();
+            this.orderId = order.getOrderId();
+            this.meal = meal;
+            this.listener = listener;
+        }
+        
+        @Override
+        public int compareTo(PrepTask other) {
+            if (orderTime != other.orderTime) {
+                return Long.compare(orderTime, other.orderTime);
+            }
+            if (orderId != other.orderId) {
+                return Integer.compare(orderId, other.orderId);
+            }
+            return Integer.compare(other.meal.getPrepTimeSeconds(), meal.getPrepTimeSeconds());
+        }
+    }
+    
+    private final int stations;
+    private final PriorityQueue<PrepTask> queue = new PriorityQueue<>();
+    private int busyStations;
+    private long queuedPrepSeconds;
+    
+    public Kitchen(int stations) {
+        if (stations < 1) {
+            throw new IllegalArgumentException("A kitchen needs at least one station");
+        }
+        this.stations = stations;
+    }
+    
+    public static Kitchen forRestaurant(Restaurant restaurant) {
+        return KITCHENS.computeIfAbsent(restaurant.getId(), id -> new Kitchen(DEFAULT_STATIONS));
+    }
+    
+    public void submit(Order order, PrepListener listener) {
+        List<PrepTask> started;
+        synchronized (this) {
+            for (CartLine line : order.getLines()) {
+                for (int i = 0; i < line.getQuantity(); i++) {
+                    queue.add(new PrepTask(order, line.getMeal(), listener));
+                    queuedPrepSeconds += line.getMeal().getPrepTimeSeconds();
+                }
+            }
+            started = dispatch();
+        }
+        notifyStarted(started);
+    }
+    
+    // Moves queued tasks onto free stations; caller holds the lock
+    private List<PrepTask> dispatch() {
+        List<PrepTask> started = null;
+        while (busyStations < stations && !queue.isEmpty()) {
+            PrepTask task = queue.poll();
+            queuedPrepSeconds -= task.meal.getPrepTimeSeconds();
+            busyStations++;
+            if (started == null) {
+                started = new ArrayList<>();
+            }
+            started.add(task);
+        }
+        return started;
+    }
+    
+    private void notifyStarted(List<PrepTask> started) {
+        if (started == null) {
+            return;
+        }
+        for (PrepTask task : started) {
+            task.listener.onItemStarted(task.meal);
+            KitchenScheduler.schedule(() -> finish(task), 
+                task.meal.getPrepTimeSeconds() * MILLIS_PER_PREP_SECOND);
+        }
+    }
+    
+    private void finish(PrepTask task) {
+        List<PrepTask> started;
+        synchronized (this) {
+            busyStations--;
+            started = dispatch();
+        }
+        task.listener.onItemCooked(task.meal);
+        notifyStarted(started);
+    }
+    
+    public int getStations() { return stations; }
+    public synchronized int getBusyStations() { return busyStations; }
+    public synchronized int getQueueDepth() { return queue.size(); }
+    public synchronized long getQueuedPrepSeconds() { return queuedPrepSeconds; }
+    
+    // Offline simulation with the same scheduling rules: all orders waiting at
+    // once, how many orders per hour can the given stations cook?
+    public static double simulateOrdersPerHour(List<Order> orders, int stations) {
+        PriorityQueue<PrepTask> tasks = new PriorityQueue<>();
+        for (Order order : orders) {
+            for (CartLine line : order.getLines()) {
+                for (int i = 0; i < line.getQuantity(); i++) {
+                    tasks.add(new PrepTask(order, line.getMeal(), null));
+                }
+            }
+        }
+        long[] stationFreeAt = new long[stations];
+        Map<Integer, Long> orderDoneAt = new HashMap<>();
+        while (!tasks.isEmpty()) {
+            PrepTask task = tasks.poll();
+            int station = 0;
+            for (int i = 1; i < stations; i++) {
+                if (stationFreeAt[i] < stationFreeAt[station]) {
+                    station = i;
+                }
+            }
+            stationFreeAt[station] += task.meal.getPrepTimeSeconds();
+            orderDoneAt.merge(task.orderId, stationFreeAt[station], Math::max);
+        }
+        long makespanSeconds = 0;
+        for (long done : orderDoneAt.values()) {
+            makespanSeconds = Math.max(makespanSeconds, done);
+        }
+        return makespanSeconds == 0 ? 0 : orders.size() * 3600.0 / makespanSeconds;
+    }
+}
+
+// ================== ETA ENGINE ==================
+// Per-restaurant delivery estimates from live kitchen state: the prep
+// seconds queued ahead of an order, the order's own uncooked prep, and
+// exponentially decayed averages of how long cooking, packaging and
+// hand-off actually took recently. Each order event refreshes only that
+// order's estimate, in O(1).
+final class EtaEngine {
+    private static final double ALPHA = 0.2; // Weight of the newest sample
+    private static final ConcurrentHashMap<String, EtaEngine> ENGINES = new ConcurrentHashMap<>();
+    
+    private static final class Ewma {
+        private volatile double value;
+        
+        Ewma(double initial) {
+            this.value = initial;
+        }
+        
+        synchronized void update(double sample) {
+            value += ALPHA * (sample - value);
+        }
+        
+        double get() { return value; }
+    }
+    
+    private final Kitchen kitchen;
+    private final Ewma cookFactor = new Ewma(1.0); // Actual over planned time from submit to last item cooked
+    private final Ewma packagingMillis = new Ewma(OrderProcessor.STEP_MILLIS);
+    private final Ewma handOffMillis = new Ewma(RiderDispatcher.TICK_MILLIS + 4 * RiderDispatcher.MILLIS_PER_KM);
+    
+    EtaEngine(Kitchen kitchen) {
+        this.kitchen = kitchen;
+    }
+    
+    public static EtaEngine forRestaurant(Restaurant restaurant) {
+        return ENGINES.computeIfAbsent(restaurant.getId(), id -> new EtaEngine(Kitchen.forRestaurant(restaurant)));
+    }
+    
+    public Tracker track(Order order) {
+        return new Tracker(order);
+    }
+    
+    public double getCookFactor() { return cookFactor.get(); }
+    public double getPackagingMillis() { return packagingMillis.get(); }
+    public double getHandOffMillis() { return handOffMillis.get(); }
+    
+    // Planned cooking time for prepSeconds of work spread over the stations,
+    // never shorter than the longest single item
+    private long planCookMillis(long prepSeconds, long floorSeconds) {
+        long spread = prepSeconds * Kitchen.MILLIS_PER_PREP_SECOND / kitchen.getStations();
+        return Math.max(spread, floorSeconds * Kitchen.MILLIS_PER_PREP_SECOND);
+    }
+    
+    private long afterCooking() {
+        return Math.round(packagingMillis.get() + handOffMillis.get());
+    }
+    
+    public static String formatRemaining(Order order) {
+        long remaining = Math.max(0, order.getEstimatedDeliveryAt() - System.currentTimeMillis());
+        long seconds = (remaining + 999) / 1000;
+        return seconds < 90 ? "~" + seconds + " s" : "~" + (seconds + 30) / 60 + " min";
+    }
+    
+    // One order's estimate; events may arrive from several kitchen threads
+    final class Tracker {
+        private final Order order;
+        private long remainingPrepSeconds;
+        private long submittedAt;
+        private long plannedCookMillis;
+        
+        Tracker(Order order) {
+            this.order = order;
+        }
+        
+        // Call before the order's items join the kitchen queue
+        synchronized void submitted() {
+            long now = System.currentTimeMillis();
+            remainingPrepSeconds = order.getTotalPrepSeconds();
+            submittedAt = now;
+            plannedCookMillis = planCookMillis(kitchen.getQueuedPrepSeconds() + remainingPrepSeconds,
+                order.getLongestPrepSeconds());
+            order.setEstimatedDeliveryAt(now + Math.round(plannedCookMillis * cookFactor.get()) + afterCooking());
+        }
+        
+        synchronized void itemCooked(Meal meal) {
+            remainingPrepSeconds -= meal.getPrepTimeSeconds();
+            long cooking = remainingPrepSeconds > 0 ? planCookMillis(remainingPrepSeconds, 0) : 0;
+            order.setEstimatedDeliveryAt(System.currentTimeMillis()
+                + Math.round(cooking * cookFactor.get()) + afterCooking());
+        }
+        
+        synchronized void packaging() {
+            long now = System.currentTimeMillis();
+            if (plannedCookMillis > 0) {
+                cookFactor.update((double) (now - submittedAt) / plannedCookMillis);
+            }
+            order.setEstimatedDeliveryAt(now + afterCooking());
+        }
+        
+        synchronized void ready() {
+            long now = System.currentTimeMillis();
+            packagingMillis.update(now - order.getStatusTime(Order.OrderStatus.PACKAGING));
+            order.setEstimatedDeliveryAt(now + Math.round(handOffMillis.get()));
+        }
+        
+        synchronized void riderAssigned(long tripMillis) {
+            order.setEstimatedDeliveryAt(System.currentTimeMillis() + tripMillis);
+        }
+        
+        synchronized void delivered() {
+            long now = System.currentTimeMillis();
+            handOffMillis.update(now - order.getStatusTime(Order.OrderStatus.READY));
+            order.setEstimatedDeliveryAt(now);
+        }
+    }
+}
+
+// ================== RIDER DISPATCH ==================
+final class Rider {
+    private final int id;
+    private final String name;
+    private final int stars;
+    
+    Rider(int id, String name, int stars) {
+        this.id = id;
+        this.name = name;
+        this.stars = stars;
+    }
+    
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public String getStars() { return "★★★★★".substring(0, stars) + "☆☆☆☆☆".substring(stars); }
+}
+
+// Matches READY orders to the nearest free rider of a simulated fleet.
+// Free riders sit in a uniform grid sized for about two riders per cell
+// (intrusive doubly linked lists over rider indexes), so a lookup scans
+// outward ring by ring and stops once no nearer rider can exist. Requests are queued and
+// matched in batches, oldest first, by a tick that only runs while
+// requests are waiting; a rider rejoins the grid at the drop-off point
+// when the trip ends.
+final class RiderDispatcher {
+    static final double AREA_KM = 12;
+    static final long TICK_MILLIS = Long.getLong("foodflex.dispatch.tickMillis", 100);
+    static final long MILLIS_PER_KM = Long.getLong("foodflex.dispatch.millisPerKm", 200);
+    static final int FLEET_SIZE = Integer.getInteger("foodflex.dispatch.riders", 200);
+    private static final double MAX_DROP_KM = 3;
+    private static final String[] NAMES = {"Rajesh", "Priya", "Amit", "Neha", "Vikram", "Ananya", "Karan", "Meera",
+        "Arjun", "Divya", "Rohit", "Sneha", "Farhan", "Lakshmi", "Sanjay", "Pooja"};
+    private static volatile RiderDispatcher instance;
+    
+    interface AssignmentListener {
+        // tripMillis covers riding to the restaurant and on to the customer
+        void onRiderAssigned(Rider rider, long tripMillis);
+    }
+    
+    private static final class Request {
+        final double x, y, dropX, dropY;
+        final AssignmentListener listener;
+        
+        Request(double x, double y, double dropX, double dropY, AssignmentListener listener) {
+            this.x = x;
+            this.y = y;
+            this.dropX = dropX;
+            this.dropY = dropY;
+            this.listener = listener;
+        }
+    }
+    
+    private final Rider[] riders;
+    private final double[] riderX, riderY;
+    private final int[] riderCell, nextInCell, prevInCell;
+    private final int cells; // Per side
+    private final double cellKm;
+    private final int[] cellHead;
+    private int freeRiders;
+    private final Random random = new Random();
+    private final ConcurrentLinkedQueue<Request> incoming = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Request> waiting = new ArrayDeque<>(); // Guarded by this
+    private final AtomicBoolean tickScheduled = new AtomicBoolean();
+    
+    RiderDispatcher(int fleetSize, long seed) {
+        riders = new Rider[fleetSize];
+        riderX = new double[fleetSize];
+        riderY = new double[fleetSize];
+        riderCell = new int[fleetSize];
+        nextInCell = new int[fleetSize];
+        prevInCell = new int[fleetSize];
+        cells = Math.max(1, (int) Math.sqrt(fleetSize / 2.0));
+        cellKm = AREA_KM / cells;
+        cellHead = new int[cells * cells];
+        Arrays.fill(cellHead, -1);
+        Random fleet = new Random(seed);
+        for (int i = 0; i < fleetSize; i++) {
+            String name = NAMES[i % NAMES.length] + (i < NAMES.length ? "" : " " + (char) ('A' + i / NAMES.length % 26) + ".");
+            riders[i] = new Rider(i, name, 3 + fleet.nextInt(3));
+            addFree(i, fleet.nextDouble() * AREA_KM, fleet.nextDouble() * AREA_KM);
+        }
+    }
+    
+    public static RiderDispatcher getInstance() {
+        if (instance == null) {
+            synchronized (RiderDispatcher.class) {
+                if (instance == null) {
+                    instance = new RiderDispatcher(FLEET_SIZE, 7);
+                }
+            }
+        }
+        return instance;
+    }
+    
+    // The customer is simulated as a random drop-off within MAX_DROP_KM of the restaurant
+    public void requestRider(Order order, AssignmentListener listener) {
+        Restaurant restaurant = order.getRestaurant();
+        double dropX, dropY;
+        synchronized (random) {
+            dropX = clamp(restaurant.getX() + (random.nextDouble() * 2 - 1) * MAX_DROP_KM);
+            dropY = clamp(restaurant.getY() + (random.nextDouble() * 2 - 1) * MAX_DROP_KM);
+        }
+        incoming.add(new Request(restaurant.getX(), restaurant.getY(), dropX, dropY, listener));
+        scheduleTick();
+    }
+    
+    public synchronized int getFreeRiders() { return freeRiders; }
+    public int getFleetSize() { return riders.length; }
+    
+    private void scheduleTick() {
+        if (tickScheduled.compareAndSet(false, true)) {
+            KitchenScheduler.schedule(this::tick, TICK_MILLIS);
+        }
+    }
+    
+    private void tick() {
+        List<Runnable> assigned = new ArrayList<>();
+        boolean pending;
+        synchronized (this) {
+            for (Request request; (request = incoming.poll()) != null; ) {
+                waiting.add(request);
+            }
+            matchWaiting(assigned);
+            // Cleared only after the drain, so ticks never overlap; anything that
+            // arrived before this is caught by the check below, anything after schedules its own tick
+            tickScheduled.set(false);
+            pending = !waiting.isEmpty() || !incoming.isEmpty();
+        }
+        for (Runnable notify : assigned) {
+            notify.run();
+        }
+        if (pending) {
+            scheduleTick();
+        }
+    }
+    
+    // Greedy batch: oldest request first takes its nearest free rider
+    private synchronized void matchWaiting(List<Runnable> assigned) {
+        while (!waiting.isEmpty() && freeRiders > 0) {
+            Request request = waiting.poll();
+            int rider = nearestFree(request.x, request.y);
+            removeFree(rider);
+            double km = Math.hypot(riderX[rider] - request.x, riderY[rider] - request.y)
+                + Math.hypot(request.dropX - request.x, request.dropY - request.y);
+            long tripMillis = Math.round(km * MILLIS_PER_KM);
+            assigned.add(() -> {
+                KitchenScheduler.schedule(() -> release(rider, request.dropX, request.dropY), tripMillis);
+                request.listener.onRiderAssigned(riders[rider], tripMillis);
+            });
+        }
+    }
+    
+    private void release(int rider, double x, double y) {
+        boolean pending;
+        synchronized (this) {
+            addFree(rider, x, y);
+            pending = !waiting.isEmpty();
+        }
+        if (pending) {
+            scheduleTick();
+        }
+    }
+    
+    // Caller holds the lock and has checked freeRiders > 0
+    private int nearestFree(double x, double y) {
+        int cx = cellOf(x), cy = cellOf(y);
+        // Distance from the point to the nearest edge of its own cell
+        double edgeGap = Math.min(Math.min(x - cx * cellKm, (cx + 1) * cellKm - x),
+            Math.min(y - cy * cellKm, (cy + 1) * cellKm - y));
+        int best = -1;
+        double bestSquared = Double.MAX_VALUE;
+        for (int ring = 0; ring < cells; ring++) {
+            // Every rider in this ring or beyond is at least this far away
+            double bound = Math.max(0, edgeGap + (ring - 1) * cellKm);
+            if (best >= 0 && bestSquared <= bound * bound) {
+                break;
+            }
+            for (int gx = cx - ring; gx <= cx + ring; gx++) {
+                if (gx < 0 || gx >= cells) {
+                    continue;
+                }
+                boolean edgeColumn = gx == cx - ring || gx == cx + ring;
+                for (int gy = cy - ring; gy <= cy + ring; gy += edgeColumn ? 1 : 2 * ring) {
+                    if (gy < 0 || gy >= cells) {
+                        continue;
+                    }
+                    for (int r = cellHead[gx * cells + gy]; r >= 0; r = nextInCell[r]) {
+                        double dx = riderX[r] - x, dy = riderY[r] - y;
+                        double squared = dx * dx + dy * dy;
+                        if (squared < bestSquared) {
+                            bestSquared = squared;
+                            best = r;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+    
+    private void addFree(int rider, double x, double y) {
+        riderX[rider] = x;
+        riderY[rider] = y;
+        int cell = cellOf(x) * cells + cellOf(y);
+        riderCell[rider] = cell;
+        prevInCell[rider] = -1;
+        nextInCell[rider] = cellHead[cell];
+        if (cellHead[cell] >= 0) {
+            prevInCell[cellHead[cell]] = rider;
+        }
+        cellHead[cell] = rider;
+        freeRiders++;
+    }
+    
+    private void removeFree(int rider) {
+        int next = nextInCell[rider], prev = prevInCell[rider];
+        if (prev >= 0) {
+            nextInCell[prev] = next;
+        } else {
+            cellHead[riderCell[rider]] = next;
+        }
+        if (next >= 0) {
+            prevInCell[next] = prev;
+        }
+        freeRiders--;
+    }
+    
+    private int cellOf(double km) {
+        return Math.min(cells - 1, Math.max(0, (int) (km / cellKm)));
+    }
+    
+    private static double clamp(double km) {
+        return Math.min(AREA_KM, Math.max(0, km));
+    }
+    
+    // --dispatch-sim: times one batch matching pending orders at random restaurants
+    static void simulate(int fleetSize, int orderCount, List<Restaurant> restaurants) {
+        RiderDispatcher dispatcher = new RiderDispatcher(fleetSize, 7);
+        Random random = new Random(42);
+        double[] totalKm = new double[1];
+        for (int i = 0; i < orderCount; i++) {
+            Restaurant restaurant = restaurants.get(random.nextInt(restaurants.size()));
+            // Same drop-off spread as requestRider
+            double dropX = clamp(restaurant.getX() + (random.nextDouble() * 2 - 1) * MAX_DROP_KM);
+            double dropY = clamp(restaurant.getY() + (random.nextDouble() * 2 - 1) * MAX_DROP_KM);
+            dispatcher.waiting.add(new Request(restaurant.getX(), restaurant.getY(), dropX, dropY,
+                (rider, tripMillis) -> totalKm[0] += (double) tripMillis / MILLIS_PER_KM));
+        }
+        List<Runnable> assigned = new ArrayList<>();
+        long start = System.nanoTime();
+        dispatcher.matchWaiting(assigned);
+        long micros = (System.nanoTime() - start) / 1000;
+        for (Runnable notify : assigned) {
+            notify.run();
+        }
+        System.out.printf("Matched %d of %d orders to %d riders in %.2f ms (mean trip %.2f km)%n",
+            assigned.size(), orderCount, fleetSize, micros / 1000.0, totalKm[0] / Math.max(1, assigned.size()));
+    }
+}
+
+// ================== ORDER EVENT BUS ==================
+// Collects lifecycle events from any number of processors, keeps only the
+// latest progress per order, and hands them to the Swing listener in one
+// batch per frame on the EDT.
+final class OrderEventBus implements OrderProcessor.OrderUpdateListener {
+    static final int FRAME_MILLIS = 16;
+    
+    private static final class PendingEvents {
+        final Order order;
+        boolean started;
+        int progress = -1;
+        boolean completed;
+        
+        PendingEvents(Order order) {
+            this.order = order;
+        }
+    }
+    
+    private final OrderProcessor.OrderUpdateListener target;
+    private final ConcurrentHashMap<Integer, PendingEvents> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Timer frameTimer;
+    
+    public OrderEventBus(OrderProcessor.OrderUpdateListener target) {
+        this.target = target;
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> flush());
+        this.frameTimer.setRepeats(false);
+    }
+    
+    @Override
+    public void onOrderStarted(Order order) {
+        pending.compute(order.getOrderId(), (id, events) -> {
+            PendingEvents updated = events == null ? new PendingEvents(order) : events;
+            updated.started = true;
+            return updated;
+        });
+        scheduleFlush();
+    }
+    
+    @Override
+    public void onOrderProgress(Order order, int progress) {
+        pending.compute(order.getOrderId(), (id, events) -> {
+            PendingEvents updated = events == null ? new PendingEvents(order) : events;
+            updated.progress = progress; // Latest progress wins
+            return updated;
+        });
+        scheduleFlush();
+    }
+    
+    @Override
+    public void onOrderCompleted(Order order) {
+        pending.compute(order.getOrderId(), (id, events) -> {
+            PendingEvents updated = events == null ? new PendingEvents(order) : events;
+            updated.completed = true;
+            return updated;
+        });
+        scheduleFlush();
+    }
+    
+    public int getPendingCount() { return pending.size(); }
+    
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(frameTimer::restart);
+        }
+    }
+    
+    // Runs on the EDT once per frame while events are arriving
+    private void flush() {
+        flushScheduled.set(false);
+        for (Integer orderId : pending.keySet()) {
+            PendingEvents events = pending.remove(orderId);
+            if (events == null) {
+                continue;
+            }
+            if (events.started) {
+                target.onOrderStarted(events.order);
+            }
+            if (events.progress >= 0) {
+                target.onOrderProgress(events.order, events.progress);
+            }
+            if (events.completed) {
+                target.onOrderCompleted(events.order);
+            }
+        }
+        target.onBatchDelivered();
+    }
+}
+
+// ================== KITCHEN SCHEDULER ==================
+// Small shared pool that drives every order as timed tasks, so no thread
+// is parked per order and thread count stays flat under load.
+final class KitchenScheduler {
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+    
+    private KitchenScheduler() {}
+    
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(POOL_SIZE, task -> {
+            Thread t = new Thread(task, "kitchen-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+    
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return EXECUTOR.schedule(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    public static int getPoolSize() { return POOL_SIZE; }
+}
+
+// ================== ORDER JOURNAL ==================
+// Single writer thread that drains queued orders and appends them to the
+// order history in batches, syncing to disk at most once per group-commit interval.
+final class OrderJournal implements Closeable {
+    private static final long SYNC_MILLIS = Long.getLong("foodflex.journal.syncMillis", 200);
+    private static final int MAX_BATCH = 4096;
+    private static volatile OrderJournal instance;
+    
+    private final BlockingQueue<Order> queue = new LinkedBlockingQueue<>();
+    private final OrderHistory history;
+    private final long syncMillis;
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private boolean dirty;
+    private long lastSync = System.currentTimeMillis();
+    
+    public OrderJournal(OrderHistory history, long syncMillis) {
+        this.history = history;
+        this.syncMillis = syncMillis;
+        this.writerThread = new Thread(this::writeLoop, "order-journal");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+    
+    public static OrderJournal getInstance() {
+        OrderJournal journal = instance;
+        if (journal == null) {
+            synchronized (OrderJournal.class) {
+                journal = instance;
+                if (journal == null) {
+                    journal = new OrderJournal(OrderHistory.getInstance(), SYNC_MILLIS);
+                    OrderJournal created = journal;
+                    Runtime.getRuntime().addShutdownHook(new Thread(created::close, "order-journal-shutdown"));
+                    instance = journal;
+                }
+            }
+        }
+        return journal;
+    }
+    
+    public void append(Order order) {
+        if (closed) {
+            throw new IllegalStateException("Order journal is closed");
+        }
+        queue.add(order);
+    }
+    
+    public int getPendingCount() { return queue.size(); }
+    public OrderHistory getHistory() { return history; }
+    
+    private void writeLoop() {
+        List<Order> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Order first = queue.poll(Math.max(1, syncMillis), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                syncIfDue(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                batch.clear();
+            }
+        }
+    }
+    
+    private void writeBatch(List<Order> batch) throws IOException {
+        long start = System.nanoTime();
+        for (Order order : batch) {
+            try {
+                history.append(order);
+            } catch (RuntimeException e) {
+                // One unstorable order must not stop the writer or the rest of the batch
+                System.err.println("Could not save order #" + order.getOrderId() + ": " + e);
+            }
+        }
+        dirty = true;
+        OrderMetrics.getInstance().recordJournalWrite(batch.size(), (System.nanoTime() - start) / 1000);
+    }
+    
+    private void syncIfDue(boolean force) throws IOException {
+        long now = System.currentTimeMillis();
+        if (dirty && (force || now - lastSync >= syncMillis)) {
+            long start = System.nanoTime();
+            history.force();
+            OrderMetrics.getInstance().recordJournalSync((System.nanoTime() - start) / 1000);
+            dirty = false;
+            lastSync = now;
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // The writer wakes up within one sync interval and drains the queue
+            writerThread.join();
+            syncIfDue(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
+
+// ================== ORDER HISTORY STORE ==================
+// Fixed-layout binary order history on memory-mapped segments, with a
+// sidecar index from order id to record number for O(1) lookups.
+//
+// Record layout (256 bytes, big-endian):
+//   0  int   orderId
+//   4  byte  flags (FLAG_CONTINUATION when the record only carries extra lines)
+//   5  byte  lineCount
+//   8  long  order time (epoch millis)
+//   16 long  restaurant id, packed ASCII
+//   24 long  total in paise
+//   32 lines of (long meal id packed ASCII, int quantity)
+// Record 0 is the file header: magic, version, record count, max order id.
+// Index slot 0 holds the record count the index covers; an index that does
+// not match the header after a crash is rebuilt from the records. Order ids
+// index the sidecar directly, so each must be positive and within MAX_ID_GAP
+// of the highest id so far, which keeps the index dense.
+final class OrderHistory implements Closeable {
+    static final String DATA_FILE = "order_history.dat";
+    static final String INDEX_FILE = "order_history.idx";
+    static final String LEGACY_FILE = "order_history.txt"; // Text log written before this store existed
+    
+    static final int RECORD_SIZE = 256;
+    static final int SEGMENT_BYTES = 1 << 26; // 64 MB, a whole number of records
+    static final int RECORDS_PER_SEGMENT = SEGMENT_BYTES / RECORD_SIZE;
+    static final int MAX_LINES = 18;
+    static final int LINE_SIZE = 12;
+    
+    static final int OFF_ORDER_ID = 0;
+    static final int OFF_FLAGS = 4;
+    static final int OFF_LINE_COUNT = 5;
+    static final int OFF_TIME = 8;
+    static final int OFF_RESTAURANT = 16;
+    static final int OFF_TOTAL = 24;
+    static final int OFF_LINES = 32;
+    static final byte FLAG_CONTINUATION = 1;
+    
+    private static final int MAGIC = 0x46464F48; // "FFOH"
+    private static final int VERSION = 1;
+    private static final int HEADER_COUNT = 8;
+    private static final int HEADER_MAX_ORDER_ID = 16;
+    private static final int INDEX_GROWTH_SLOTS = 1 << 16;
+    private static final int INDEX_RECORD_COUNT = 0;
+    static final int MAX_ID_GAP = 1 << 20;
+    
+    private static volatile OrderHistory instance;
+    
+    private final FileChannel dataChannel;
+    private final FileChannel indexChannel;
+    private volatile MappedByteBuffer[] segments;
+    private MappedByteBuffer indexMap;
+    private LongBuffer index;
+    private volatile long recordCount; // Includes the header record
+    private int maxOrderId;
+    
+    private OrderHistory(File dataFile, File indexFile) throws IOException {
+        this.dataChannel = new RandomAccessFile(dataFile, "rw").getChannel();
+        this.indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+        
+        long segmentCount = Math.max(1, (dataChannel.size() + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) segmentCount];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = mapSegment(i);
+        }
+        this.segments = mapped;
+        
+        ByteBuffer header = mapped[0];
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(HEADER_COUNT, 1);
+            header.putInt(HEADER_MAX_ORDER_ID, 0);
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException(dataFile + " is not a FoodFlex order history file");
+        }
+        this.recordCount = header.getLong(HEADER_COUNT);
+        this.maxOrderId = header.getInt(HEADER_MAX_ORDER_ID);
+        
+        mapIndex(Math.max(indexChannel.size() / Long.BYTES, maxOrderId + 1L));
+        if (index.get(INDEX_RECORD_COUNT) != recordCount) {
+            rebuildIndex();
+        }
+    }
+    
+    // A missing index, or one not forced before a crash, is rebuilt from the records
+    private void rebuildIndex() throws IOException {
+        for (int slot = 0; slot < index.capacity(); slot++) {
+            index.put(slot, 0);
+        }
+        for (long rec = 1; rec < recordCount; rec++) {
+            if ((flags(rec) & FLAG_CONTINUATION) == 0 && orderId(rec) > 0) {
+                indexOrder(orderId(rec), rec);
+            }
+        }
+        index.put(INDEX_RECORD_COUNT, recordCount);
+        indexMap.force();
+    }
+    
+    private void indexOrder(int orderId, long rec) throws IOException {
+        if (orderId >= index.capacity()) {
+            mapIndex(orderId + 1L);
+        }
+        index.put(orderId, rec);
+    }
+    
+    // Positive and not far past the highest id, so the direct index stays dense
+    private boolean isIndexableId(long orderId) {
+        return orderId > 0 && orderId <= maxOrderId + (long) MAX_ID_GAP;
+    }
+    
+    public static OrderHistory getInstance() {
+        OrderHistory history = instance;
+        if (history == null) {
+            synchronized (OrderHistory.class) {
+                history = instance;
+                if (history == null) {
+                    try {
+                        history = open(DATA_FILE, INDEX_FILE);
+                        migrateLegacyText(history);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    instance = history;
+                }
+            }
+        }
+        return history;
+    }
+    
+    // A fresh history takes over the old text log once; the log is then renamed so it is never read twice
+    private static void migrateLegacyText(OrderHistory history) throws IOException {
+        File legacy = new File(LEGACY_FILE);
+        if (history.getRecordCount() > 1 || !legacy.isFile()) {
+            return;
+        }
+        int imported = history.importLegacyText(legacy, new MenuManager());
+        File done = new File(LEGACY_FILE + ".imported");
+        if (!legacy.renameTo(done)) {
+            throw new IOException("Imported " + legacy + " but could not rename it to " + done);
+        }
+        System.out.println("Imported " + imported + " orders from " + legacy + " (now " + done + ")");
+    }
+    
+    public static OrderHistory open(String dataFile, String indexFile) throws IOException {
+        return new OrderHistory(new File(dataFile), new File(indexFile));
+    }
+    
+    private MappedByteBuffer mapSegment(int segment) throws IOException {
+        return dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_BYTES, SEGMENT_BYTES);
+    }
+    
+    private void mapIndex(long slots) throws IOException {
+        long capacity = ((slots + INDEX_GROWTH_SLOTS - 1) / INDEX_GROWTH_SLOTS) * INDEX_GROWTH_SLOTS;
+        indexMap = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity * Long.BYTES);
+        index = indexMap.asLongBuffer();
+    }
+    
+    // Called from the journal writer thread only
+    public synchronized void append(Order order) throws IOException {
+        append(order.getOrderId(), order.getOrderTime().getTime(), order.getRestaurant().getId(),
+            order.getTotalPaise(), order.getLines());
+    }
+    
+    private void append(int orderId, long time, String restaurantId, long totalPaise, List<CartLine> lines)
+            throws IOException {
+        if (!isIndexableId(orderId)) {
+            throw new IllegalArgumentException("Order id " + orderId + " is not within "
+                + MAX_ID_GAP + " of the last order id " + maxOrderId);
+        }
+        // Every id is packed before anything is written, so a bad one cannot leave half an order behind
+        long restaurant = packId(restaurantId);
+        long[] meals = new long[lines.size()];
+        for (int i = 0; i < meals.length; i++) {
+            meals[i] = packId(lines.get(i).getMeal().getId());
+        }
+        
+        int next = 0;
+        long first = recordCount;
+        byte flags = 0;
+        do {
+            ByteBuffer buf = segmentForWrite(recordCount);
+            int base = positionOf(recordCount);
+            int lineCount = 0;
+            int pos = base + OFF_LINES;
+            while (lineCount < MAX_LINES && next < meals.length) {
+                buf.putLong(pos, meals[next]);
+                buf.putInt(pos + Long.BYTES, lines.get(next).getQuantity());
+                pos += LINE_SIZE;
+                lineCount++;
+                next++;
+            }
+            buf.putInt(base + OFF_ORDER_ID, orderId);
+            buf.put(base + OFF_FLAGS, flags);
+            buf.put(base + OFF_LINE_COUNT, (byte) lineCount);
+            buf.putLong(base + OFF_TIME, time);
+            buf.putLong(base + OFF_RESTAURANT, restaurant);
+            buf.putLong(base + OFF_TOTAL, flags == 0 ? totalPaise : 0);
+            recordCount++;
+            flags = FLAG_CONTINUATION;
+        } while (next < meals.length);
+        
+        maxOrderId = Math.max(maxOrderId, orderId);
+        indexOrder(orderId, first);
+        
+        ByteBuffer header = segments[0];
+        header.putInt(HEADER_MAX_ORDER_ID, maxOrderId);
+        header.putLong(HEADER_COUNT, recordCount);
+        index.put(INDEX_RECORD_COUNT, recordCount);
+    }
+    
+    private ByteBuffer segmentForWrite(long rec) throws IOException {
+        int segment = (int) (rec / RECORDS_PER_SEGMENT);
+        MappedByteBuffer[] current = segments;
+        if (segment >= current.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(current, segment + 1);
+            grown[segment] = mapSegment(segment);
+            segments = grown;
+            return grown[segment];
+        }
+        return current[segment];
+    }
+    
+    // Data first, then the index that points into it
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        indexMap.force();
+    }
+    
+    // Flushes and closes both files; the mappings themselves go when they are garbage collected
+    @Override
+    public synchronized void close() throws IOException {
+        if (!dataChannel.isOpen()) {
+            return;
+        }
+        force();
+        dataChannel.close();
+        indexChannel.close();
+    }
+    
+    // Lines of the text log kept before the binary history, e.g.
+    // "Order #1003 | Restaurant: Spice Trail | Total: ₹348.00 | Time: Sat Oct 17 12:00:00 IST 2026".
+    // Only id, restaurant, total and time were logged, so imported orders have no lines.
+    private static final java.util.regex.Pattern LEGACY_LINE = java.util.regex.Pattern.compile(
+        "Order #(\\d+) \\| Restaurant: (.*?) \\| Total: \\D*([\\d.]+) \\| Time: (.*)");
+    
+    synchronized int importLegacyText(File legacyFile, MenuManager menuManager) throws IOException {
+        Map<String, String> idsByName = new HashMap<>();
+        for (Restaurant restaurant : menuManager.getRestaurants()) {
+            idsByName.put(restaurant.getName(), restaurant.getId());
+        }
+        java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US);
+        int imported = 0;
+        int skipped = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(legacyFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                java.util.regex.Matcher m = LEGACY_LINE.matcher(line.trim());
+                if (!m.matches()) {
+                    continue;
+                }
+                long orderId;
+                long totalPaise;
+                try {
+                    orderId = Long.parseLong(m.group(1));
+                    totalPaise = Money.parse(m.group(3));
+                } catch (NumberFormatException e) {
+                    skipped++;
+                    continue;
+                }
+                if (!isIndexableId(orderId)) {
+                    skipped++;
+                    continue;
+                }
+                long time;
+                try {
+                    time = dateFormat.parse(m.group(4)).getTime();
+                } catch (java.text.ParseException e) {
+                    time = legacyFile.lastModified();
+                }
+                append((int) orderId, time, idsByName.getOrDefault(m.group(2), "?"),
+                    totalPaise, Collections.emptyList());
+                imported++;
+            }
+        }
+        force();
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " lines of " + legacyFile + " with an unusable order id or total");
+        }
+        return imported;
+    }
+    
+    // Returns the first record of the order, or null when it is not in the history
+    public synchronized OrderRecord find(int orderId) {
+        if (orderId <= 0 || orderId >= index.capacity()) {
+            return null;
+        }
+        long rec = index.get(orderId);
+        return rec == 0 ? null : read(rec);
+    }
+    
+    private OrderRecord read(long rec) {
+        List<String> mealIds = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        long total = total(rec);
+        long next = rec;
+        do {
+            ByteBuffer buf = segmentFor(next);
+            int base = positionOf(next);
+            int lineCount = buf.get(base + OFF_LINE_COUNT);
+            for (int i = 0; i < lineCount; i++) {
+                int pos = base + OFF_LINES + i * LINE_SIZE;
+                mealIds.add(unpackId(buf.getLong(pos)));
+                quantities.add(buf.getInt(pos + Long.BYTES));
+            }
+            next++;
+        } while (next < recordCount && (flags(next) & FLAG_CONTINUATION) != 0 && orderId(next) == orderId(rec));
+        return new OrderRecord(orderId(rec), time(rec), unpackId(restaurant(rec)), total, mealIds, quantities);
+    }
+    
+    // ---- Raw record access for full scans (no string parsing, no allocation) ----
+    public long getRecordCount() { return recordCount; }
+    public long getFirstRecord() { return 1; }
+    public synchronized int getMaxOrderId() { return maxOrderId; }
+    
+    ByteBuffer segmentFor(long rec) { return segments[(int) (rec / RECORDS_PER_SEGMENT)]; }
+    static int positionOf(long rec) { return (int) (rec % RECORDS_PER_SEGMENT) * RECORD_SIZE; }
+    
+    int orderId(long rec) { return segmentFor(rec).getInt(positionOf(rec) + OFF_ORDER_ID); }
+    byte flags(long rec) { return segmentFor(rec).get(positionOf(rec) + OFF_FLAGS); }
+    long time(long rec) { return segmentFor(rec).getLong(positionOf(rec) + OFF_TIME); }
+    long restaurant(long rec) { return segmentFor(rec).getLong(positionOf(rec) + OFF_RESTAURANT); }
+    long total(long rec) { return segmentFor(rec).getLong(positionOf(rec) + OFF_TOTAL); }
+    int lineCount(long rec) { return segmentFor(rec).get(positionOf(rec) + OFF_LINE_COUNT); }
+    long lineMeal(long rec, int line) { return segmentFor(rec).getLong(positionOf(rec) + OFF_LINES + line * LINE_SIZE); }
+    int lineQuantity(long rec, int line) { return segmentFor(rec).getInt(positionOf(rec) + OFF_LINES + line * LINE_SIZE + Long.BYTES); }
+    
+    static boolean isStorableId(String id) {
+        if (id.isEmpty() || id.length() > Long.BYTES) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) == 0 || id.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Packs an id of up to 8 ASCII characters into a long, so ids compare as numbers
+    static long packId(String id) {
+        if (id.length() > Long.BYTES) {
+            throw new IllegalArgumentException("Id too long for history record: " + id);
+        }
+        long packed = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            packed = (packed << 8) | (i < id.length() ? (id.charAt(i) & 0xFF) : 0);
+        }
+        return packed;
+    }
+    
+    static String unpackId(long packed) {
+        byte[] bytes = new byte[Long.BYTES];
+        int length = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            byte b = (byte) (packed >>> (56 - 8 * i));
+            if (b == 0) {
+                break;
+            }
+            bytes[length++] = b;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+}
+
+class OrderRecord {
+    private final int orderId;
+    private final long orderTime;
+    private final String restaurantId;
+    private final long totalPaise;
+    private final List<String> mealIds;
+    private final List<Integer> quantities;
+    
+    public OrderRecord(int orderId, long orderTime, String restaurantId, long totalPaise,
+                       List<String> mealIds, List<Integer> quantities) {
+        this.orderId = orderId;
+        this.orderTime = orderTime;
+        this.restaurantId = restaurantId;
+        this.totalPaise = totalPaise;
+        this.mealIds = Collections.unmodifiableList(mealIds);
+        this.quantities = Collections.unmodifiableList(quantities);
+    }
+    
+    public int getOrderId() { return orderId; }
+    public Date getOrderTime() { return new Date(orderTime); }
+    public String getRestaurantId() { return restaurantId; }
+    public long getTotalPaise() { return totalPaise; }
+    public List<String> getMealIds() { return mealIds; }
+    public List<Integer> getQuantities() { return quantities; }
+}
+
+// ================== ORDER ANALYTICS ==================
+// Group-by reports over the binary order history. Record ranges are split
+// across cores with fork/join and scanned straight off the mapped segments
+// into primitive accumulators; refresh() only scans records appended since
+// the previous call.
+final class OrderAnalytics {
+    private static final int SPLIT_THRESHOLD = 1 << 16; // Records per leaf task
+    
+    private final OrderHistory history;
+    private final long fromMillis;
+    private final long toMillis;
+    private final ForkJoinPool pool;
+    private HistoryAggregate result = new HistoryAggregate();
+    private long processedUpTo;
+    
+    public OrderAnalytics(OrderHistory history, long fromMillis, long toMillis) {
+        this(history, fromMillis, toMillis, ForkJoinPool.commonPool());
+    }
+    
+    public OrderAnalytics(OrderHistory history, long fromMillis, long toMillis, ForkJoinPool pool) {
+        this.history = history;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.pool = pool;
+        this.processedUpTo = history.getFirstRecord();
+    }
+    
+    // Scans only what was appended since the last call and merges it into the running result
+    public synchronized HistoryAggregate refresh() {
+        long end = history.getRecordCount();
+        if (end > processedUpTo) {
+            result.merge(pool.invoke(new ScanTask(processedUpTo, end)));
+            processedUpTo = end;
+        }
+        return result.copy();
+    }
+    
+    public synchronized HistoryAggregate runFull() {
+        result = new HistoryAggregate();
+        processedUpTo = history.getFirstRecord();
+        return refresh();
+    }
+    
+    private class ScanTask extends RecursiveTask<HistoryAggregate> {
+        private final long from, to;
+        
+        ScanTask(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected HistoryAggregate compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                return scan();
+            }
+            long mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(from, mid);
+            left.fork();
+            HistoryAggregate right = new ScanTask(mid, to).compute();
+            right.merge(left.join());
+            return right;
+        }
+        
+        private HistoryAggregate scan() {
+            HistoryAggregate agg = new HistoryAggregate();
+            TimeZone zone = TimeZone.getDefault();
+            for (long rec = from; rec < to; rec++) {
+                long time = history.time(rec);
+                if (time < fromMillis || time >= toMillis) {
+                    continue;
+                }
+                if ((history.flags(rec) & OrderHistory.FLAG_CONTINUATION) == 0) {
+                    long total = history.total(rec);
+                    int hour = (int) Math.floorMod((time + zone.getOffset(time)) / 3_600_000L, 24L);
+                    agg.orders++;
+                    agg.revenuePaise += total;
+                    agg.ordersByHour[hour]++;
+                    agg.revenueByHour[hour] += total;
+                    agg.byRestaurant.add(history.restaurant(rec), 1, total);
+                }
+                int lines = history.lineCount(rec);
+                for (int i = 0; i < lines; i++) {
+                    agg.byMeal.add(history.lineMeal(rec, i), history.lineQuantity(rec, i), 0);
+                }
+            }
+            return agg;
+        }
+    }
+}
+
+class HistoryAggregate {
+    long orders;
+    long revenuePaise;
+    final long[] ordersByHour = new long[24];
+    final long[] revenueByHour = new long[24];
+    final PackedIdCounters byRestaurant = new PackedIdCounters(); // count = orders, sum = revenue
+    final PackedIdCounters byMeal = new PackedIdCounters();       // count = quantity sold
+    
+    void merge(HistoryAggregate other) {
+        orders += other.orders;
+        revenuePaise += other.revenuePaise;
+        for (int h = 0; h < 24; h++) {
+            ordersByHour[h] += other.ordersByHour[h];
+            revenueByHour[h] += other.revenueByHour[h];
+        }
+        byRestaurant.merge(other.byRestaurant);
+        byMeal.merge(other.byMeal);
+    }
+    
+    HistoryAggregate copy() {
+        HistoryAggregate copy = new HistoryAggregate();
+        copy.merge(this);
+        return copy;
+    }
+    
+    public long getOrderCount() { return orders; }
+    public long getRevenuePaise() { return revenuePaise; }
+    public long getOrdersInHour(int hour) { return ordersByHour[hour]; }
+    public long getRevenueInHour(int hour) { return revenueByHour[hour]; }
+    
+    public Map<String, Long> getRevenueByRestaurant() {
+        Map<String, Long> revenue = new TreeMap<>();
+        byRestaurant.forEach((id, count, sum) -> revenue.put(OrderHistory.unpackId(id), sum));
+        return revenue;
+    }
+    
+    public Map<String, Long> getRevenueByCuisine(MenuManager menuManager) {
+        Map<String, String> cuisines = new HashMap<>();
+        for (Restaurant r : menuManager.getRestaurants()) {
+            cuisines.put(r.getId(), r.getCuisine());
+        }
+        Map<String, Long> revenue = new TreeMap<>();
+        byRestaurant.forEach((id, count, sum) -> 
+            revenue.merge(cuisines.getOrDefault(OrderHistory.unpackId(id), "Unknown"), sum, Long::sum));
+        return revenue;
+    }
+    
+    // Meal ids with the highest quantity sold, best first
+    public List<Map.Entry<String, Long>> getTopMeals(int n) {
+        PriorityQueue<Map.Entry<String, Long>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        byMeal.forEach((id, count, sum) -> {
+            if (top.size() < n) {
+                top.add(new AbstractMap.SimpleImmutableEntry<>(OrderHistory.unpackId(id), count));
+            } else if (count > top.peek().getValue()) {
+                top.poll();
+                top.add(new AbstractMap.SimpleImmutableEntry<>(OrderHistory.unpackId(id), count));
+            }
+        });
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(top);
+        sorted.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return sorted;
+    }
+    
+    public void print(PrintStream out, MenuManager menuManager, int topN) {
+        out.printf("Orders: %d | Revenue: %s%n", orders, Money.format(revenuePaise));
+        out.println("Revenue by restaurant:");
+        getRevenueByRestaurant().forEach((id, paise) -> out.printf("  %-8s %s%n", id, Money.format(paise)));
+        out.println("Revenue by cuisine:");
+        getRevenueByCuisine(menuManager).forEach((c, paise) -> out.printf("  %-14s %s%n", c, Money.format(paise)));
+        out.println("Orders by hour:");
+        for (int h = 0; h < 24; h++) {
+            if (ordersByHour[h] > 0) {
+                out.printf("  %02d:00  %d%n", h, ordersByHour[h]);
+            }
+        }
+        out.println("Top meals:");
+        getTopMeals(topN).forEach(e -> out.printf("  %-8s x%d%n", e.getKey(), e.getValue()));
+    }
+}
+
+// Open-addressing map from a packed id (never 0) to a count and a sum
+class PackedIdCounters {
+    interface Visitor {
+        void visit(long id, long count, long sum);
+    }
+    
+    private long[] keys = new long[64];
+    private long[] counts = new long[64];
+    private long[] sums = new long[64];
+    private int size;
+    
+    void add(long id, long count, long sum) {
+        int slot = slotOf(id);
+        if (keys[slot] == 0) {
+            keys[slot] = id;
+            size++;
+        }
+        counts[slot] += count;
+        sums[slot] += sum;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+    
+    private int slotOf(long id) {
+        int mask = keys.length - 1;
+        int slot = (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[slot] != 0 && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void grow() {
+        long[] oldKeys = keys, oldCounts = counts, oldSums = sums;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[keys.length];
+        sums = new long[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                sums[slot] = oldSums[i];
+            }
+        }
+    }
+    
+    void merge(PackedIdCounters other) {
+        other.forEach(this::add);
+    }
+    
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.visit(keys[i], counts[i], sums[i]);
+            }
+        }
+    }
+    
+    int size() { return size; }
+}
+
+// ================== POPULARITY TRACKER ==================
+// Live order counts per meal (LongAdder, so concurrent orders do not
+// contend) with an exact streaming top-K per restaurant and overall.
+// Counts only grow, so re-offering a meal after each increment keeps
+// every top-K list exact without ever sorting a whole menu. Counts start
+// from the order history at startup, replayed in the background.
+final class PopularityTracker {
+    static final int TOP_K = 10;
+    private static final PopularityTracker INSTANCE = new PopularityTracker();
+    
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, TopMeals> topByRestaurant = new ConcurrentHashMap<>();
+    private final TopMeals globalTop = new TopMeals(TOP_K);
+    
+    public static PopularityTracker getInstance() { return INSTANCE; }
+    
+    public void recordOrder(Order order) {
+        TopMeals restaurantTop = topFor(order.getRestaurant().getId());
+        for (CartLine line : order.getLines()) {
+            record(restaurantTop, line.getMeal().getId(), line.getQuantity());
+        }
+    }
+    
+    // Replays orders already in the history, up to (not including) endRecord
+    public void seedFrom(OrderHistory history, long endRecord) {
+        TopMeals restaurantTop = null;
+        for (long rec = history.getFirstRecord(); rec < endRecord; rec++) {
+            if ((history.flags(rec) & OrderHistory.FLAG_CONTINUATION) == 0) {
+                restaurantTop = topFor(OrderHistory.unpackId(history.restaurant(rec)));
+            }
+            int lines = history.lineCount(rec);
+            for (int i = 0; i < lines; i++) {
+                record(restaurantTop, OrderHistory.unpackId(history.lineMeal(rec, i)), history.lineQuantity(rec, i));
+            }
+        }
+    }
+    
+    private TopMeals topFor(String restaurantId) {
+        return topByRestaurant.computeIfAbsent(restaurantId, id -> new TopMeals(TOP_K));
+    }
+    
+    private void record(TopMeals restaurantTop, String mealId, int quantity) {
+        LongAdder adder = counts.computeIfAbsent(mealId, id -> new LongAdder());
+        adder.add(quantity);
+        long count = adder.sum();
+        restaurantTop.offer(mealId, count);
+        globalTop.offer(mealId, count);
+    }
+    
+    public long getCount(Meal meal) {
+        LongAdder adder = counts.get(meal.getId());
+        return adder == null ? 0 : adder.sum();
+    }
+    
+    // The restaurant's own Meal objects, which can be added to a cart
+    public List<Meal> getTopMeals(Restaurant restaurant, int n) {
+        TopMeals top = topByRestaurant.get(restaurant.getId());
+        List<Meal> meals = new ArrayList<>();
+        if (top == null) {
+            return meals;
+        }
+        for (String mealId : top.snapshot(n)) {
+            Meal onMenu = restaurant.findMeal(mealId);
+            if (onMenu != null) {
+                meals.add(onMenu);
+            }
+        }
+        return meals;
+    }
+    
+    // Meals whose menus are not loaded yet are left out
+    public List<Meal> getGlobalTopMeals(int n) {
+        MealRegistry registry = MealRegistry.getInstance();
+        List<Meal> meals = new ArrayList<>();
+        for (String mealId : globalTop.snapshot(n)) {
+            Meal meal = registry.getMeal(registry.indexOf(OrderHistory.packId(mealId)));
+            if (meal != null) {
+                meals.add(meal);
+            }
+        }
+        return meals;
+    }
+}
+
+// Fixed-size list of the most ordered meal ids, kept sorted by count. Ids
+// rather than Meal objects, since history replay sees meals whose menus are
+// not loaded and each menu load makes new Meal objects for the same ids.
+class TopMeals {
+    private final String[] mealIds;
+    private final long[] counts;
+    private int size;
+    
+    TopMeals(int capacity) {
+        mealIds = new String[capacity];
+        counts = new long[capacity];
+    }
+    
+    synchronized void offer(String mealId, long count) {
+        int pos = -1;
+        for (int i = 0; i < size; i++) {
+            if (mealIds[i].equals(mealId)) {
+                pos = i;
+                break;
+            }
+        }
+        if (pos < 0) {
+            if (size < mealIds.length) {
+                pos = size++;
+            } else if (count > counts[size - 1]) {
+                pos = size - 1;
+            } else {
+                return;
+            }
+            mealIds[pos] = mealId;
+            counts[pos] = count;
+        } else {
+            // A concurrent offer may already have stored a newer count
+            counts[pos] = Math.max(counts[pos], count);
+        }
+        while (pos > 0 && counts[pos] > counts[pos - 1]) {
+            String m = mealIds[pos]; mealIds[pos] = mealIds[pos - 1]; mealIds[pos - 1] = m;
+            long c = counts[pos]; counts[pos] = counts[pos - 1]; counts[pos - 1] = c;
+            pos--;
+        }
+    }
+    
+    synchronized List<String> snapshot(int n) {
+        return new ArrayList<>(Arrays.asList(mealIds).subList(0, Math.min(n, size)));
+    }
+}
+
+// ================== RECOMMENDATIONS ==================
+// Item-to-item co-occurrence over placed orders: for every pair of meals
+// ordered together, how many orders contained both. Rows are int-keyed
+// counts by dense meal index, updated in place as each order is placed, so
+// recommendations always reflect the latest purchases. A cart is scored by
+// summing its meals' rows, normalized by popularity so staples that go with
+// everything do not drown out real complements.
+final class CoOccurrenceRecommender {
+    private static final CoOccurrenceRecommender INSTANCE = new CoOccurrenceRecommender();
+    
+    private static final class Row {
+        int orders; // Orders containing this meal
+        final IntCounts together = new IntCounts();
+    }
+    
+    private Row[] rows = new Row[512]; // By meal index; the array is guarded by this, each row by itself
+    
+    public static CoOccurrenceRecommender getInstance() { return INSTANCE; }
+    
+    private synchronized Row row(int index) {
+        if (index >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, index + 1));
+        }
+        Row row = rows[index];
+        if (row == null) {
+            row = rows[index] = new Row();
+        }
+        return row;
+    }
+    
+    public void recordOrder(Order order) {
+        List<CartLine> lines = order.getLines();
+        int[] meals = new int[lines.size()];
+        for (int i = 0; i < meals.length; i++) {
+            meals[i] = lines.get(i).getMeal().getIndex();
+        }
+        record(meals, meals.length);
+    }
+    
+    // meals holds distinct meal indexes
+    private void record(int[] meals, int count) {
+        for (int i = 0; i < count; i++) {
+            Row row = row(meals[i]);
+            synchronized (row) {
+                row.orders++;
+                for (int j = 0; j < count; j++) {
+                    if (j != i) {
+                        row.together.add(meals[j], 1);
+                    }
+                }
+            }
+        }
+    }
+    
+    // Replays orders already in the history, up to (not including) endRecord
+    public void seedFrom(OrderHistory history, long endRecord) {
+        MealRegistry registry = MealRegistry.getInstance();
+        int[] meals = new int[OrderHistory.MAX_LINES];
+        int count = 0;
+        for (long rec = history.getFirstRecord(); rec < endRecord; rec++) {
+            if ((history.flags(rec) & OrderHistory.FLAG_CONTINUATION) == 0) {
+                record(meals, count);
+                count = 0;
+            }
+            int lines = history.lineCount(rec);
+            for (int i = 0; i < lines; i++) {
+                if (count == meals.length) {
+                    meals = Arrays.copyOf(meals, count * 2);
+                }
+                meals[count++] = registry.indexOf(history.lineMeal(rec, i));
+            }
+        }
+        record(meals, count);
+    }
+    
+    // Top complements from the given restaurant's available meals, best first
+    public List<Meal> recommend(List<Meal> cart, Restaurant restaurant, int n) {
+        IntCounts positions = new IntCounts(); // Candidate meal index -> slot + 1
+        int[] candidates = new int[16];
+        double[] scores = new double[16];
+        int size = 0;
+        for (Meal meal : cart) {
+            Row row = row(meal.getIndex());
+            int[] keys;
+            int[] counts;
+            int rowOrders;
+            synchronized (row) {
+                if (row.orders == 0) {
+                    continue;
+                }
+                keys = row.together.keys();
+                counts = row.together.counts();
+                rowOrders = row.orders;
+            }
+            for (int k = 0; k < keys.length; k++) {
+                int other = keys[k];
+                int otherOrders;
+                Row otherRow = row(other);
+                synchronized (otherRow) {
+                    otherOrders = otherRow.orders;
+                }
+                double score = counts[k] / Math.sqrt((double) rowOrders * otherOrders);
+                int slot = positions.get(other) - 1;
+                if (slot < 0) {
+                    if (size == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, size * 2);
+                        scores = Arrays.copyOf(scores, size * 2);
+                    }
+                    slot = size++;
+                    positions.add(other, slot + 1);
+                    candidates[slot] = other;
+                }
+                scores[slot] += score;
+            }
+        }
+        for (Meal meal : cart) {
+            int slot = positions.get(meal.getIndex()) - 1;
+            if (slot >= 0) {
+                scores[slot] = -1;
+            }
+        }
+        
+        // Partial selection: n passes over the candidates
+        List<Meal> picks = new ArrayList<>(n);
+        MealRegistry registry = MealRegistry.getInstance();
+        while (picks.size() < n) {
+            int best = -1;
+            for (int i = 0; i < size; i++) {
+                if (scores[i] > 0 && (best < 0 || scores[i] > scores[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            scores[best] = -1;
+            // The registry holds the newest Meal for each id; pick the restaurant's own
+            Meal meal = registry.getMeal(candidates[best]);
+            Meal onMenu = meal == null ? null : restaurant.findMeal(meal.getId());
+            if (onMenu != null && onMenu.isAvailable()) {
+                picks.add(onMenu);
+            }
+        }
+        return picks;
+    }
+}
+
+// Open-addressing int -> int counts; keys are stored plus one so 0 marks an empty slot
+final class IntCounts {
+    private int[] keys = new int[8];
+    private int[] counts = new int[8];
+    private int size;
+    
+    void add(int key, int delta) {
+        int slot = slotOf(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key + 1;
+            size++;
+        }
+        counts[slot] += delta;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+    
+    int get(int key) {
+        int slot = slotOf(key);
+        return keys[slot] == 0 ? 0 : counts[slot];
+    }
+    
+    int size() { return size; }
+    
+    // Keys and their counts in matching order
+    int[] keys() {
+        int[] out = new int[size];
+        for (int i = 0, n = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                out[n++] = keys[i] - 1;
+            }
+        }
+        return out;
+    }
+    
+    int[] counts() {
+        int[] out = new int[size];
+        for (int i = 0, n = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                out[n++] = counts[i];
+            }
+        }
+        return out;
+    }
+    
+    private int slotOf(int key) {
+        int mask = keys.length - 1;
+        int slot = ((key + 1) * 0x9E3779B9 >>> 16) & mask;
+        while (keys[slot] != 0 && keys[slot] != key + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void grow() {
+        int[] oldKeys = keys, oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
+
+// ================== ORDER TRACKING MODEL ==================
+// Table of every active order. Rows are found by order id in O(1); updates
+// only mark rows dirty and fireRowChanges() then fires one event per run of
+// adjacent dirty rows. Finished orders are dropped in bulk compactions, so
+// removals stay amortized O(1) instead of shifting the table per order.
+class OrderTrackingTableModel extends AbstractTableModel {
+    static final int PROGRESS_COLUMN = 3;
+    private static final String[] COLUMNS = {"Order #", "Restaurant", "Status", "Progress", "Placed", "Stage Since", "ETA"};
+    private static final long RETAIN_FINISHED_MILLIS = 30_000;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    
+    private static final class Row {
+        final Order order;
+        int progress;
+        long finishedAt;
+        
+        Row(Order order) {
+            this.order = order;
+        }
+    }
+    
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<Integer, Integer> rowIndex = new HashMap<>(); // order id -> row
+    private final BitSet dirtyRows = new BitSet();
+    private int firstNewRow = -1;
+    private int finishedRows;
+    private long lastCompaction = System.currentTimeMillis();
+    
+    // EDT only
+    public void orderUpdated(Order order, int progress) {
+        Integer index = rowIndex.get(order.getOrderId());
+        Row row;
+        if (index == null) {
+            index = rows.size();
+            row = new Row(order);
+            rows.add(row);
+            rowIndex.put(order.getOrderId(), index);
+            if (firstNewRow < 0) {
+                firstNewRow = index;
+            }
+        } else {
+            row = rows.get(index);
+            dirtyRows.set(index);
+        }
+        row.progress = Math.max(row.progress, progress);
+        if (row.finishedAt == 0 && order.getStatus() == Order.OrderStatus.DELIVERED) {
+            row.finishedAt = System.currentTimeMillis();
+            finishedRows++;
+        }
+    }
+    
+    // Fires change events for everything touched since the last call
+    public void fireRowChanges() {
+        if (compactIfDue()) {
+            return;
+        }
+        int newRowsFrom = firstNewRow < 0 ? rows.size() : firstNewRow;
+        for (int start = dirtyRows.nextSetBit(0); start >= 0 && start < newRowsFrom; ) {
+            int end = Math.min(dirtyRows.nextClearBit(start), newRowsFrom);
+            fireTableRowsUpdated(start, end - 1);
+            start = dirtyRows.nextSetBit(end);
+        }
+        dirtyRows.clear();
+        if (firstNewRow >= 0) {
+            fireTableRowsInserted(firstNewRow, rows.size() - 1);
+            firstNewRow = -1;
+        }
+    }
+    
+    private boolean compactIfDue() {
+        long now = System.currentTimeMillis();
+        if (finishedRows == 0 || finishedRows * 4 < rows.size() || now - lastCompaction < RETAIN_FINISHED_MILLIS) {
+            return false;
+        }
+        lastCompaction = now;
+        List<Row> kept = new ArrayList<>(rows.size() - finishedRows);
+        finishedRows = 0;
+        for (Row row : rows) {
+            if (row.finishedAt == 0 || now - row.finishedAt < RETAIN_FINISHED_MILLIS) {
+                kept.add(row);
+                if (row.finishedAt != 0) {
+                    finishedRows++;
+                }
+            }
+        }
+        rows.clear();
+        rows.addAll(kept);
+        rowIndex.clear();
+        for (int i = 0; i < rows.size(); i++) {
+            rowIndex.put(rows.get(i).order.getOrderId(), i);
+        }
+        dirtyRows.clear();
+        firstNewRow = -1;
+        fireTableDataChanged();
+        return true;
+    }
+    
+    @Override
+    public int getRowCount() { return rows.size(); }
+    
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+    
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+    
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == PROGRESS_COLUMN ? Integer.class : String.class;
+    }
+    
+    @Override
+    public Object getValueAt(int rowIndex, int column) {
+        Row row = rows.get(rowIndex);
+        Order order = row.order;
+        Order.OrderStatus status = order.getStatus();
+        switch (column) {
+            case 0: return order.getOrderId();
+            case 1: return order.getRestaurant().getName();
+            case 2: return status.getDisplayText();
+            case PROGRESS_COLUMN: return row.progress;
+            case 4: return TIME_FORMAT.format(order.getOrderTime().toInstant());
+            case 5: return TIME_FORMAT.format(Instant.ofEpochMilli(order.getStatusTime(status)));
+            case 6: return row.finishedAt != 0 ? "Done" : EtaEngine.formatRemaining(order);
+            default: return null;
+        }
+    }
+}
+
+// ================== INVENTORY ==================
+// Units of each meal that can still be put in a cart. Counts live in
+// chunked AtomicIntegerArrays indexed by the meal's dense index, so a
+// reservation is one CAS on that meal's cell and different meals never
+// contend. Every unit in a cart holds a Reservation; placing the order
+// commits it, removing the unit releases it, and a reservation left in an
+// abandoned cart expires after RESERVATION_MILLIS and its unit returns to
+// stock. Reservations all live equally long, so a FIFO queue is already in
+// expiry order and the sweep only looks at its head.
+final class Inventory {
+    static final int UNLIMITED = Integer.MAX_VALUE;
+    static final int DEFAULT_STOCK = Integer.getInteger("foodflex.inventory.stock", UNLIMITED);
+    static final long RESERVATION_MILLIS = Long.getLong("foodflex.inventory.reservationMillis", 15 * 60_000L);
+    private static final long SWEEP_MILLIS = 1000;
+    private static final int CHUNK_BITS = 10;
+    private static final Inventory INSTANCE = new Inventory(DEFAULT_STOCK, RESERVATION_MILLIS);
+    
+    private static final int ACTIVE = 0, RELEASED = 1, COMMITTED = 2;
+    
+    final class Reservation {
+        private final Meal meal;
+        private final long expiresAt;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+        
+        Reservation(Meal meal, long expiresAt) {
+            this.meal = meal;
+            this.expiresAt = expiresAt;
+        }
+        
+        public Meal getMeal() { return meal; }
+        public boolean isActive() { return state.get() == ACTIVE; }
+        
+        // Returns the unit to stock; false if already committed, released or expired
+        public boolean release() {
+            if (state.compareAndSet(ACTIVE, RELEASED)) {
+                restock(meal, 1);
+                return true;
+            }
+            return false;
+        }
+        
+        // Turns the unit into a sale; false if it expired first
+        public boolean commit() {
+            return state.compareAndSet(ACTIVE, COMMITTED);
+        }
+    }
+    
+    private final int defaultStock;
+    private final long reservationMillis;
+    private volatile AtomicIntegerArray[] chunks = new AtomicIntegerArray[16];
+    private final ConcurrentLinkedQueue<Reservation> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+    
+    Inventory(int defaultStock, long reservationMillis) {
+        this.defaultStock = defaultStock;
+        this.reservationMillis = reservationMillis;
+    }
+    
+    public static Inventory getInstance() { return INSTANCE; }
+    
+    // Cell holding the meal's count, creating its chunk on first use
+    private AtomicIntegerArray chunkFor(int index) {
+        AtomicIntegerArray[] table = chunks;
+        int chunk = index >>> CHUNK_BITS;
+        if (chunk < table.length && table[chunk] != null) {
+            return table[chunk];
+        }
+        synchronized (this) {
+            table = chunks;
+            if (chunk >= table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, chunk + 1));
+            }
+            if (table[chunk] == null) {
+                AtomicIntegerArray cells = new AtomicIntegerArray(1 << CHUNK_BITS);
+                for (int i = 0; i < cells.length(); i++) {
+                    cells.set(i, defaultStock);
+                }
+                table[chunk] = cells;
+            }
+            chunks = table;
+            return table[chunk];
+        }
+    }
+    
+    public int getAvailable(Meal meal) {
+        AtomicIntegerArray[] table = chunks;
+        int chunk = meal.getIndex() >>> CHUNK_BITS;
+        if (chunk >= table.length || table[chunk] == null) {
+            return defaultStock;
+        }
+        return table[chunk].get(meal.getIndex() & ((1 << CHUNK_BITS) - 1));
+    }
+    
+    public void setStock(Meal meal, int units) {
+        int previous = chunkFor(meal.getIndex()).getAndSet(meal.getIndex() & ((1 << CHUNK_BITS) - 1), units);
+        if ((previous > 0) != (units > 0)) {
+            MenuPayloadCache.catalogChanged();
+        }
+    }
+    
+    public void restock(Meal meal, int units) {
+        AtomicIntegerArray cells = chunkFor(meal.getIndex());
+        int cell = meal.getIndex() & ((1 << CHUNK_BITS) - 1);
+        int current;
+        do {
+            current = cells.get(cell);
+            if (current == UNLIMITED) {
+                return;
+            }
+        } while (!cells.compareAndSet(cell, current, (int) Math.min(UNLIMITED - 1L, (long) current + units)));
+        if (current <= 0 && units > 0) { // Back in stock
+            MenuPayloadCache.catalogChanged();
+        }
+    }
+    
+    public Reservation reserve(Meal meal) throws ItemUnavailableException {
+        if (!meal.isOnMenu()) {
+            throw new ItemUnavailableException(meal.getName() + " is currently unavailable!");
+        }
+        AtomicIntegerArray cells = chunkFor(meal.getIndex());
+        int cell = meal.getIndex() & ((1 << CHUNK_BITS) - 1);
+        int current;
+        do {
+            current = cells.get(cell);
+            if (current <= 0) {
+                throw new ItemUnavailableException(meal.getName() + " is sold out!");
+            }
+        } while (current != UNLIMITED && !cells.compareAndSet(cell, current, current - 1));
+        if (current == 1) { // That was the last unit
+            MenuPayloadCache.catalogChanged();
+        }
+        Reservation reservation = new Reservation(meal, System.currentTimeMillis() + reservationMillis);
+        if (current != UNLIMITED) { // Nothing to give back otherwise
+            expiryQueue.add(reservation);
+            scheduleSweep();
+        }
+        return reservation;
+    }
+    
+    private void scheduleSweep() {
+        if (sweepScheduled.compareAndSet(false, true)) {
+            KitchenScheduler.schedule(this::sweep, SWEEP_MILLIS);
+        }
+    }
+    
+    private void sweep() {
+        sweepScheduled.set(false);
+        long now = System.currentTimeMillis();
+        for (Reservation head; (head = expiryQueue.peek()) != null && (head.expiresAt <= now || !head.isActive()); ) {
+            expiryQueue.poll();
+            head.release(); // No-op unless it was still held
+        }
+        if (!expiryQueue.isEmpty()) {
+            scheduleSweep();
+        }
+    }
+}
+
+// ================== ORDER SERVICE ==================
+// Headless ordering engine: carts, validation, order creation, history and
+// processing, with no Swing dependency. Each session owns one cart and is
+// safe to use from any thread; sessions never share locks, so independent
+// sessions run fully in parallel. The GUI is one client with one session.
+// Sessions live in a SessionStore, which compacts idle ones, so callers
+// should look a session up by id per request rather than keep the object;
+// only pinned sessions are safe to hold.
+class OrderService {
+    private final MenuManager menuManager;
+    private final OrderJournal journal;
+    private final PopularityTracker popularity;
+    private final Inventory inventory;
+    private final SessionStore sessions = new SessionStore(this);
+    private final ConcurrentHashMap<Integer, Order> activeOrders = new ConcurrentHashMap<>();
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    
+    public OrderService(MenuManager menuManager) {
+        this(menuManager, OrderJournal.getInstance(), PopularityTracker.getInstance(), Inventory.getInstance());
+    }
+    
+    public OrderService(MenuManager menuManager, OrderJournal journal, PopularityTracker popularity, Inventory inventory) {
+        this.menuManager = menuManager;
+        this.journal = journal;
+        this.popularity = popularity;
+        this.inventory = inventory;
+    }
+    
+    public MenuManager getMenuManager() { return menuManager; }
+    
+    public Session openSession() {
+        return openSession(false);
+    }
+    
+    // Never compacted or evicted, for clients that keep the Session object
+    public Session openPinnedSession() {
+        return openSession(true);
+    }
+    
+    private Session openSession(boolean pinned) {
+        long key = nextSessionId.getAndIncrement();
+        Session session = new Session(key, pinned);
+        sessions.put(key, session);
+        return session;
+    }
+    
+    public Session getSession(String sessionId) {
+        long key = SessionStore.keyOf(sessionId);
+        return key < 0 ? null : sessions.get(key);
+    }
+    
+    public void closeSession(String sessionId) {
+        long key = SessionStore.keyOf(sessionId);
+        Session session = key < 0 ? null : sessions.remove(key);
+        if (session != null) {
+            session.clearCart();
+        }
+    }
+    
+    public int getSessionCount() { return sessions.size(); }
+    
+    public SessionStore getSessionStore() { return sessions; }
+    
+    // Rebuilds a compacted session: state is SessionStore's int[] layout
+    Session restoreSession(long key, int[] state) {
+        Session session = new Session(key, false);
+        int restaurant = state[SessionStore.RESTAURANT];
+        if (restaurant >= 0 && restaurant < menuManager.getRestaurants().size()) {
+            session.restaurant = menuManager.getRestaurants().get(restaurant);
+        }
+        MealRegistry registry = MealRegistry.getInstance();
+        for (int i = SessionStore.FIRST_LINE; i + 1 < state.length; i += 2) {
+            // The registry holds the newest Meal for the id; the cart needs the restaurant's own
+            Meal meal = registry.getMeal(state[i]);
+            if (meal != null && session.restaurant != null) {
+                meal = session.restaurant.findMeal(meal.getId());
+            }
+            if (meal != null) {
+                session.cart.restoreLine(meal, state[i + 1]);
+            }
+        }
+        return session;
+    }
+    
+    // Orders still being processed; delivered orders are looked up in OrderHistory
+    public Order getActiveOrder(int orderId) { return activeOrders.get(orderId); }
+    
+    public int getActiveOrderCount() { return activeOrders.size(); }
+    
+    public OrderRecord findPastOrder(int orderId) { return journal.getHistory().find(orderId); }
+    
+    private Order submit(List<CartLine> lines, Restaurant restaurant, OrderProcessor.OrderUpdateListener listener) {
+        Order order = new Order(lines, restaurant);
+        activeOrders.put(order.getOrderId(), order);
+        journal.append(order); // Never blocks on disk I/O
+        popularity.recordOrder(order);
+        CoOccurrenceRecommender.getInstance().recordOrder(order);
+        new OrderProcessor(order, new OrderProcessor.OrderUpdateListener() {
+            @Override
+            public void onOrderStarted(Order o) { listener.onOrderStarted(o); }
+            
+            @Override
+            public void onOrderProgress(Order o, int progress) { listener.onOrderProgress(o, progress); }
+            
+            @Override
+            public void onOrderCompleted(Order o) {
+                activeOrders.remove(o.getOrderId());
+                OrderMetrics.getInstance().recordDelivered();
+                listener.onOrderCompleted(o);
+            }
+        }).start();
+        return order;
+    }
+    
+    public class Session {
+        private final String id;
+        private final long key;
+        private final boolean pinned;
+        private final Cart cart = new Cart();
+        private final Map<String, ArrayDeque<Inventory.Reservation>> reservations = new HashMap<>(); // meal id -> one per unit
+        private volatile long lastAccess = System.currentTimeMillis();
+        private Restaurant restaurant; // Whose menu the cart holds; set by the first item, cleared with the cart
+        
+        Session(long key, boolean pinned) {
+            this.id = "S" + key;
+            this.key = key;
+            this.pinned = pinned;
+        }
+        
+        public String getId() { return id; }
+        long getKey() { return key; }
+        boolean isPinned() { return pinned; }
+        public long getLastAccess() { return lastAccess; }
+        void touch() { lastAccess = System.currentTimeMillis(); }
+        
+        // The live cart; callers other than the session's owning thread must hold the session lock
+        public Cart getCart() { return cart; }
+        
+        public synchronized Restaurant getRestaurant() { return restaurant; }
+        
+        // A cart holds meals from one restaurant; an item from another is refused until the cart is placed or cleared
+        public synchronized void addItem(Restaurant restaurant, Meal meal) throws ItemUnavailableException {
+            lastAccess = System.currentTimeMillis();
+            checkOnMenu(restaurant, meal);
+            if (!cart.isEmpty() && this.restaurant != restaurant) {
+                throw new ItemUnavailableException("Your cart holds an order from " + this.restaurant.getName()
+                    + "; place or clear it before adding " + meal.getName() + " from " + restaurant.getName());
+            }
+            Inventory.Reservation reservation = inventory.reserve(meal);
+            try {
+                cart.addItem(meal);
+            } catch (ItemUnavailableException e) {
+                reservation.release();
+                throw e;
+            }
+            reservations.computeIfAbsent(meal.getId(), id -> new ArrayDeque<>()).push(reservation);
+            this.restaurant = restaurant;
+        }
+        
+        private void checkOnMenu(Restaurant restaurant, Meal meal) throws ItemUnavailableException {
+            if (restaurant.findMeal(meal.getId()) != meal) {
+                throw new ItemUnavailableException(meal.getName() + " is not on " + restaurant.getName() + "'s menu");
+            }
+        }
+        
+        public synchronized void removeItem(Meal meal) {
+            lastAccess = System.currentTimeMillis();
+            if (!cart.contains(meal)) {
+                return;
+            }
+            cart.removeItem(meal);
+            ArrayDeque<Inventory.Reservation> held = reservations.get(meal.getId());
+            if (held != null) { // Units restored from a compacted cart hold no reservation
+                held.pop().release();
+                if (held.isEmpty()) {
+                    reservations.remove(meal.getId());
+                }
+            }
+            if (cart.isEmpty()) {
+                restaurant = null;
+            }
+        }
+        
+        public synchronized void clearCart() {
+            lastAccess = System.currentTimeMillis();
+            cart.clear();
+            restaurant = null;
+            for (ArrayDeque<Inventory.Reservation> held : reservations.values()) {
+                for (Inventory.Reservation reservation : held) {
+                    reservation.release();
+                }
+            }
+            reservations.clear();
+        }
+        
+        // Commits every unit's reservation, reserving again for any that expired
+        // or that a compacted cart gave up.
+        // If stock ran out meanwhile, the units committed so far go back to stock
+        // and the cart keeps its items, which are reserved again on the next attempt.
+        private void commitReservations() throws ItemUnavailableException {
+            List<Meal> committed = new ArrayList<>();
+            try {
+                for (CartLine line : cart.getLines()) {
+                    Meal meal = line.getMeal();
+                    ArrayDeque<Inventory.Reservation> held = reservations.get(meal.getId());
+                    Iterator<Inventory.Reservation> it = held == null ? null : held.iterator();
+                    for (int i = 0; i < line.getQuantity(); i++) {
+                        Inventory.Reservation reservation = it != null && it.hasNext() ? it.next() : null;
+                        if ((reservation == null || !reservation.commit()) && !inventory.reserve(meal).commit()) {
+                            throw new ItemUnavailableException(meal.getName() + " is sold out!");
+                        }
+                        committed.add(meal);
+                    }
+                }
+            } catch (ItemUnavailableException e) {
+                for (Meal meal : committed) {
+                    inventory.restock(meal, 1);
+                }
+                throw e;
+            }
+            reservations.clear();
+        }
+        
+        public synchronized List<CartLine> getLines() {
+            return new ArrayList<>(cart.getLines());
+        }
+        
+        public synchronized long getTotalPaise() { return cart.getTotalPaise(); }
+        
+        // Releases held stock and returns SessionStore's compact form of the cart;
+        // the units are reserved again when the order is placed
+        synchronized int[] compact(int lastAccessSeconds) {
+            for (ArrayDeque<Inventory.Reservation> held : reservations.values()) {
+                for (Inventory.Reservation reservation : held) {
+                    reservation.release();
+                }
+            }
+            reservations.clear();
+            int[] state = new int[SessionStore.FIRST_LINE + 2 * cart.getLineCount()];
+            state[SessionStore.LAST_ACCESS] = lastAccessSeconds;
+            state[SessionStore.RESTAURANT] = restaurant == null ? -1 : restaurant.getIndex();
+            for (int i = 0; i < cart.getLineCount(); i++) {
+                CartLine line = cart.getLine(i);
+                state[SessionStore.FIRST_LINE + 2 * i] = line.getMeal().getIndex();
+                state[SessionStore.FIRST_LINE + 2 * i + 1] = line.getQuantity();
+            }
+            return state;
+        }
+        
+        public synchronized Order placeOrder(Restaurant restaurant, OrderProcessor.OrderUpdateListener listener)
+                throws EmptyCartException, ItemUnavailableException {
+            long start = System.nanoTime();
+            lastAccess = System.currentTimeMillis();
+            if (cart.isEmpty()) {
+                throw new EmptyCartException("Cart is empty");
+            }
+            for (CartLine line : cart.getLines()) {
+                checkOnMenu(restaurant, line.getMeal());
+            }
+            commitReservations();
+            Order order = submit(cart.getLines(), restaurant, listener);
+            cart.clear();
+            this.restaurant = null;
+            OrderMetrics.getInstance().recordPlacement((System.nanoTime() - start) / 1000);
+            return order;
+        }
+    }
+}
+
+// ================== SESSION STORE ==================
+// Sessions keyed by their numeric id in STRIPES open-addressing tables, each
+// behind its own lock. A periodic sweep turns sessions idle for COMPACT_MILLIS
+// into an int[] of [last access second, restaurant, meal index, quantity, ...], giving
+// back their reserved stock, so an idle cart costs its table slot plus a
+// 20-30 byte array instead of a Session, Cart, lines and reservations.
+// Sessions idle for EVICT_MILLIS are appended to a spill file when
+// foodflex.sessions.spillDir is set, keeping only the file offset, or are
+// dropped otherwise. Looking up a compacted or spilled session rebuilds it.
+// Spill files rotate every SPILL_EXPIRE_MILLIS; once a file has taken no
+// writes for that long its sessions are dropped, and a file is deleted as
+// soon as no table slot refers to it.
+// A sweep and a lookup of the same key are serialized by the stripe lock,
+// so a session being looked up is never compacted under its caller.
+final class SessionStore {
+    static final long COMPACT_MILLIS = Long.getLong("foodflex.sessions.compactMillis", Inventory.RESERVATION_MILLIS);
+    static final long EVICT_MILLIS = Long.getLong("foodflex.sessions.evictMillis", 2 * 3_600_000L);
+    static final String SPILL_DIR = System.getProperty("foodflex.sessions.spillDir");
+    static final long SPILL_EXPIRE_MILLIS = Long.getLong("foodflex.sessions.spillExpireMillis", 24 * 3_600_000L);
+    // Compact layout: [last access second, restaurant index or -1, (meal index, quantity)*]
+    static final int LAST_ACCESS = 0;
+    static final int RESTAURANT = 1;
+    static final int FIRST_LINE = 2;
+    private static final int STRIPES = 64;
+    private static final long SWEEP_MILLIS = 5000;
+    private static final long EPOCH_MILLIS = System.currentTimeMillis();
+    private static final int SPILL_OFFSET_BITS = 40; // A spilled slot holds generation << 40 | offset
+    private static final AtomicInteger SPILL_GENERATIONS = new AtomicInteger(); // Shared, so stores never share a file
+    
+    private final OrderService service;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+    private final AtomicInteger nextSweepStripe = new AtomicInteger();
+    private final Map<Integer, SpillFile> spills = new HashMap<>(); // By generation; guarded by this
+    private SpillFile spill; // Taking writes; guarded by this
+    
+    SessionStore(OrderService service) {
+        this.service = service;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+    
+    // "S42" -> 42, or -1 for anything that is not a session id
+    static long keyOf(String sessionId) {
+        if (sessionId == null || sessionId.length() < 2 || sessionId.length() > 19 || sessionId.charAt(0) != 'S') {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 1; i < sessionId.length(); i++) {
+            char c = sessionId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+    
+    private static int secondsOf(long millis) {
+        return (int) ((millis - EPOCH_MILLIS) / 1000);
+    }
+    
+    private static long millisOf(int seconds) {
+        return EPOCH_MILLIS + seconds * 1000L;
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    private Stripe stripeFor(int hash) {
+        return stripes[hash & (STRIPES - 1)];
+    }
+    
+    void put(long key, OrderService.Session session) {
+        int hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            stripe.put(key, hash, session);
+        }
+        scheduleSweep();
+    }
+    
+    OrderService.Session get(long key) {
+        int hash = hash(key);
+        Stripe stripe = stripeFor(hash);
+        synchronized (stripe) {
+            int slot = stripe.find(key, hash);
+            if (slot < 0) {
+                return null;
+            }
+            Object value = stripe.values[slot];
+            OrderService.Session session;
+            if (value instanceof OrderService.Session) {
+                session = (OrderService.Session) value;
+            } else {
+                int[] state = value instanceof int[] ? (int[]) value : readSpilled((Long) value);
+                if (state == null) {
+                    stripe.removeAt(slot);
+                    return null;
+                }
+                session = service.restoreSession(key, state);
+                stripe.setValue(slot, session);
+            }
+            session.touch();
+            return session;
+        }
+    }
+    
+    OrderService.Session remove(long key) {
+        OrderService.Session session = get(key); // Rebuilt first so the caller can release it
+        if (session != null) {
+            int hash = hash(key);
+            Stripe stripe = stripeFor(hash);
+            synchronized (stripe) {
+                int slot = stripe.find(key, hash);
+                if (slot >= 0) {
+                    stripe.removeAt(slot);
+                }
+            }
+        }
+        return session;
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+    
+    public int getLiveCount() {
+        int live = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                live += stripe.live;
+            }
+        }
+        return live;
+    }
+    
+    public int getSpilledCount() {
+        int spilled = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                spilled += stripe.spilled;
+            }
+        }
+        return spilled;
+    }
+    
+    public int getCompactCount() {
+        int compact = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                compact += stripe.size - stripe.live - stripe.spilled;
+            }
+        }
+        return compact;
+    }
+    
+    private void scheduleSweep() {
+        if (sweepScheduled.compareAndSet(false, true)) {
+            KitchenScheduler.schedule(this::sweep, SWEEP_MILLIS / STRIPES);
+        }
+    }
+    
+    // One stripe per run, so a sweep never holds up lookups for long
+    private void sweep() {
+        sweepScheduled.set(false);
+        Stripe stripe = stripes[nextSweepStripe.getAndIncrement() & (STRIPES - 1)];
+        sweep(stripe, System.currentTimeMillis());
+        if (size() > 0) {
+            scheduleSweep();
+        }
+    }
+    
+    // Package-private so a sweep of every stripe can be forced
+    void sweepAll(long now) {
+        for (Stripe stripe : stripes) {
+            sweep(stripe, now);
+        }
+    }
+    
+    private void sweep(Stripe stripe, long now) {
+        synchronized (stripe) {
+            for (int slot = 0; slot < stripe.keys.length; slot++) {
+                Object value = stripe.values[slot];
+                if (value instanceof OrderService.Session) {
+                    OrderService.Session session = (OrderService.Session) value;
+                    if (!session.isPinned() && now - session.getLastAccess() >= COMPACT_MILLIS) {
+                        stripe.setValue(slot, session.compact(secondsOf(session.getLastAccess())));
+                        value = stripe.values[slot];
+                    }
+                }
+                if (value instanceof int[] && now - millisOf(((int[]) value)[LAST_ACCESS]) >= EVICT_MILLIS) {
+                    Long spilled = SPILL_DIR == null ? null : writeSpilled((int[]) value, now);
+                    if (spilled == null) {
+                        stripe.removeAt(slot);
+                        slot--; // Backward shift may have moved another entry into this slot
+                    } else {
+                        stripe.setValue(slot, spilled);
+                    }
+                } else if (value instanceof Long && releaseIfExpired((Long) value, now)) {
+                    stripe.removeAt(slot);
+                    slot--;
+                }
+            }
+        }
+    }
+    
+    private synchronized Long writeSpilled(int[] state, long now) {
+        try {
+            if (spill == null || now - spill.started >= SPILL_EXPIRE_MILLIS) {
+                int generation = SPILL_GENERATIONS.incrementAndGet() & 0xFFFFFF;
+                spill = new SpillFile(new File(SPILL_DIR, "sessions-" + EPOCH_MILLIS + "-" + generation + ".spill"),
+                    generation, now);
+                spills.put(generation, spill);
+            }
+            long offset = spill.append(state);
+            spill.records++;
+            spill.lastWrite = now;
+            return (long) spill.generation << SPILL_OFFSET_BITS | offset;
+        } catch (IOException e) {
+            System.err.println("Session spill failed, dropping idle cart: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // The slot is rebuilt or removed by the caller either way, so its record is released
+    private synchronized int[] readSpilled(long spilled) {
+        SpillFile file = spills.get((int) (spilled >>> SPILL_OFFSET_BITS));
+        try {
+            return file.read(spilled & ((1L << SPILL_OFFSET_BITS) - 1));
+        } catch (IOException e) {
+            System.err.println("Could not read spilled session: " + e.getMessage());
+            return null;
+        } finally {
+            release(file);
+        }
+    }
+    
+    private synchronized boolean releaseIfExpired(long spilled, long now) {
+        SpillFile file = spills.get((int) (spilled >>> SPILL_OFFSET_BITS));
+        if (now - file.lastWrite < SPILL_EXPIRE_MILLIS) {
+            return false;
+        }
+        release(file);
+        return true;
+    }
+    
+    // Deletes a file once no slot refers to it
+    private void release(SpillFile file) {
+        if (--file.records == 0) {
+            spills.remove(file.generation);
+            if (file == spill) {
+                spill = null;
+            }
+            file.delete();
+        }
+    }
+    
+    // Linear-probing table; key 0 marks an empty slot, so keys are stored + 1.
+    // Deletes shift later entries back instead of leaving tombstones.
+    private static final class Stripe {
+        long[] keys = new long[16];
+        Object[] values = new Object[16];
+        int size, live, spilled;
+        
+        int find(long key, int hash) {
+            int mask = keys.length - 1;
+            for (int slot = (hash >>> 6) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key + 1) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        
+        void put(long key, int hash, Object value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (hash >>> 6) & mask;
+            while (keys[slot] != 0 && keys[slot] != key + 1) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = key + 1;
+                size++;
+            }
+            setValue(slot, value);
+        }
+        
+        void setValue(int slot, Object value) {
+            count(values[slot], -1);
+            values[slot] = value;
+            count(value, 1);
+        }
+        
+        private void count(Object value, int delta) {
+            if (value instanceof OrderService.Session) {
+                live += delta;
+            } else if (value instanceof Long) {
+                spilled += delta;
+            }
+        }
+        
+        void removeAt(int slot) {
+            setValue(slot, null);
+            size--;
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = (hash(keys[next] - 1) >>> 6) & mask;
+                // Move the entry back if its home is not inside (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+        }
+        
+        private void grow() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldKeys.length * 2];
+            size = live = spilled = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i] - 1, hash(oldKeys[i] - 1), oldValues[i]);
+                }
+            }
+        }
+    }
+    
+    // Append-only file of [int length][int...] records, read back by offset.
+    // Records are never rewritten; the file is deleted when its last record
+    // is released, or when the JVM exits.
+    private static final class SpillFile {
+        final int generation;
+        final long started;
+        long lastWrite;
+        int records; // Table slots still referring to this file
+        private final File file;
+        private final FileChannel channel;
+        private long end;
+        
+        SpillFile(File file, int generation, long started) throws IOException {
+            this.file = file;
+            this.generation = generation;
+            this.started = started;
+            file.getParentFile().mkdirs();
+            file.deleteOnExit();
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.truncate(0);
+        }
+        
+        void delete() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Could not close " + file + ": " + e.getMessage());
+            }
+            file.delete();
+        }
+        
+        long append(int[] state) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * state.length);
+            buffer.putInt(state.length);
+            buffer.asIntBuffer().put(state);
+            buffer.rewind();
+            long offset = end;
+            while (buffer.hasRemaining()) {
+                end += channel.write(buffer, end);
+            }
+            return offset;
+        }
+        
+        int[] read(long offset) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+            ByteBuffer buffer = ByteBuffer.allocate(4 * length.getInt(0));
+            readFully(buffer, offset + 4);
+            int[] state = new int[buffer.capacity() / 4];
+            buffer.asIntBuffer().get(state);
+            return state;
+        }
+        
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Truncated spill record at " + position);
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
+
+// ================== MENU PAYLOAD CACHE ==================
+// Menu JSON for each restaurant, encoded once as UTF-8 and gzip byte arrays
+// that the API writes to the socket as they are. Whatever can change a
+// menu reply (a meal taken off the menu, a meal selling out or coming back
+// into stock) bumps one catalog version; prices are fixed once a menu is
+// loaded. A payload built at an older version is checked against the
+// restaurant's current availability bits, so a change elsewhere costs one
+// pass over the menu and keeps the ETag, and only a real change re-encodes.
+final class MenuPayloadCache {
+    private static final AtomicLong catalogVersion = new AtomicLong();
+    
+    private final ConcurrentHashMap<String, Payload> payloads = new ConcurrentHashMap<>();
+    
+    static final class Payload {
+        private final long version;
+        private final long[] availability; // One bit per menu position
+        private final String etag;
+        private final String gzipEtag; // Each encoding is its own representation
+        private final byte[] json;
+        private final byte[] gzip;
+        
+        Payload(long version, long[] availability, String etag, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.availability = availability;
+            this.etag = etag;
+            this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+            this.json = json;
+            this.gzip = gzip;
+        }
+        
+        Payload at(long newVersion) {
+            return new Payload(newVersion, availability, etag, json, gzip);
+        }
+        
+        public String getEtag() { return etag; }
+        public String getGzipEtag() { return gzipEtag; }
+        public byte[] getJson() { return json; }
+        public byte[] getGzip() { return gzip; }
+        
+        // If-None-Match holds one or more ETags, or *; weak ones match too
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    // Called whenever a menu reply could change
+    static void catalogChanged() {
+        catalogVersion.incrementAndGet();
+    }
+    
+    static long getCatalogVersion() { return catalogVersion.get(); }
+    
+    public Payload get(Restaurant restaurant) {
+        long version = catalogVersion.get(); // Read first, so a change during the checks bumps past it
+        Payload payload = payloads.get(restaurant.getId());
+        if (payload != null && payload.version == version) {
+            return payload;
+        }
+        long[] availability = availabilityOf(restaurant.getMenu());
+        if (payload != null && Arrays.equals(payload.availability, availability)) {
+            payload = payload.at(version);
+        } else {
+            payload = encode(restaurant, version, availability);
+        }
+        payloads.put(restaurant.getId(), payload);
+        return payload;
+    }
+    
+    private static long[] availabilityOf(List<Meal> menu) {
+        long[] bits = new long[(menu.size() + 63) >>> 6];
+        for (int i = 0; i < menu.size(); i++) {
+            if (menu.get(i).isAvailable()) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+    
+    private static Payload encode(Restaurant restaurant, long version, long[] availability) {
+        byte[] json = ApiServer.menuJson(restaurant).toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory streams do not fail
+        }
+        // Content-based, so an ETag stays valid across restarts while the menu is unchanged
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        String etag = "\"" + restaurant.getId() + "-" + Long.toHexString(crc.getValue()) + "-" + json.length + "\"";
+        return new Payload(version, availability, etag, json, compressed.toByteArray());
+    }
+}
+
+// ================== HTTP API ==================
+// JSON over HTTP on the JDK's built-in server, for clients other than the
+// Swing window. Every cart call looks its session up by id, so sessions the
+// SessionStore compacted between calls come back transparently.
+//   GET    /api/restaurants
+//   GET    /api/restaurants/{id}/menu                      gzip, ETag and If-None-Match aware
+//   POST   /api/sessions                                  -> {"sessionId":...}
+//   DELETE /api/sessions/{sid}
+//   GET    /api/sessions/{sid}/cart
+//   POST   /api/sessions/{sid}/cart?restaurant=R&meal=M   add one unit
+//   DELETE /api/sessions/{sid}/cart?restaurant=R&meal=M   remove one unit
+//   POST   /api/sessions/{sid}/orders?restaurant=R        place the cart
+//   GET    /api/sessions/{sid}/recommendations            meals that go with the cart
+//   GET    /api/orders/{id}
+// Exchanges run on virtual threads when the JDK has them (21+), otherwise
+// on a fixed pool; handlers never wait on disk or the kitchen, so a small
+// pool keeps up.
+final class ApiServer {
+    static final int DEFAULT_PORT = Integer.getInteger("foodflex.api.port", 8080);
+    private static final int POOL_THREADS = Integer.getInteger("foodflex.api.threads",
+        Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+    private static final OrderProcessor.OrderUpdateListener NO_UPDATES = new OrderProcessor.OrderUpdateListener() {
+        @Override
+        public void onOrderStarted(Order order) {}
+        
+        @Override
+        public void onOrderProgress(Order order, int progress) {}
+        
+        @Override
+        public void onOrderCompleted(Order order) {}
+    };
+    
+    private final OrderService orderService;
+    private final MenuManager menuManager;
+    private final MenuPayloadCache menuPayloads = new MenuPayloadCache();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    public ApiServer(OrderService orderService, int port) throws IOException {
+        this.orderService = orderService;
+        this.menuManager = orderService.getMenuManager();
+        // Small JSON replies on keep-alive connections stall on Nagle otherwise
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+    
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(POOL_THREADS, task -> {
+                Thread t = new Thread(task, "api-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+    
+    public void start() { server.start(); }
+    
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+    
+    public int getPort() { return server.getAddress().getPort(); }
+    
+    public boolean isVirtualThreads() { return !(executor instanceof ThreadPoolExecutor); }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+            String method = exchange.getRequestMethod();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (path[0].equals("restaurants")) {
+                handleRestaurants(exchange, method, path);
+            } else if (path[0].equals("sessions")) {
+                handleSessions(exchange, method, path, query);
+            } else if (path[0].equals("orders") && path.length == 2 && method.equals("GET")) {
+                handleOrder(exchange, path[1]);
+            } else {
+                sendError(exchange, 404, "No such resource");
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, "Internal error");
+            } // Otherwise the status is already out; closing cuts the reply short
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void handleRestaurants(HttpExchange exchange, String method, String[] path) throws IOException {
+        if (!method.equals("GET")) {
+            sendError(exchange, 405, "Method not allowed");
+        } else if (path.length == 1) {
+            StringBuilder json = new StringBuilder(128 * menuManager.getRestaurants().size()).append('[');
+            for (Restaurant restaurant : menuManager.getRestaurants()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                appendRestaurant(json, restaurant);
+            }
+            send(exchange, 200, json.append(']'));
+        } else if (path.length == 3 && path[2].equals("menu")) {
+            Restaurant restaurant = menuManager.findRestaurant(path[1]);
+            if (restaurant == null) {
+                sendError(exchange, 404, "Unknown restaurant " + path[1]);
+                return;
+            }
+            sendMenu(exchange, menuPayloads.get(restaurant));
+        } else {
+            sendError(exchange, 404, "No such resource");
+        }
+    }
+    
+    private void handleSessions(HttpExchange exchange, String method, String[] path, Map<String, String> query)
+            throws IOException {
+        if (path.length == 1) {
+            if (!method.equals("POST")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            StringBuilder json = new StringBuilder("{\"sessionId\":");
+            appendString(json, orderService.openSession().getId());
+            send(exchange, 201, json.append('}'));
+            return;
+        }
+        OrderService.Session session = orderService.getSession(path[1]);
+        if (session == null) {
+            sendError(exchange, 404, "Unknown session " + path[1]);
+        } else if (path.length == 2 && method.equals("DELETE")) {
+            orderService.closeSession(session.getId());
+            send(exchange, 204, null);
+        } else if (path.length == 3 && path[2].equals("cart")) {
+            handleCart(exchange, method, session, query);
+        } else if (path.length == 3 && path[2].equals("recommendations") && method.equals("GET")) {
+            send(exchange, 200, recommendationsJson(session));
+        } else if (path.length == 3 && path[2].equals("orders") && method.equals("POST")) {
+            Restaurant restaurant = menuManager.findRestaurant(query.get("restaurant"));
+            if (restaurant == null) {
+                sendError(exchange, 400, "Unknown restaurant " + query.get("restaurant"));
+                return;
+            }
+            Restaurant cartRestaurant = session.getRestaurant();
+            if (cartRestaurant != null && cartRestaurant != restaurant) {
+                sendError(exchange, 409, "Cart holds an order from " + cartRestaurant.getId() + ", not " + restaurant.getId());
+                return;
+            }
+            try {
+                // Checks every line against the restaurant again, under the session lock
+                Order order = session.placeOrder(restaurant, NO_UPDATES);
+                StringBuilder json = new StringBuilder(256);
+                appendOrder(json, order);
+                send(exchange, 201, json);
+            } catch (EmptyCartException | ItemUnavailableException e) {
+                sendError(exchange, 409, e.getMessage());
+            }
+        } else {
+            sendError(exchange, 404, "No such resource");
+        }
+    }
+    
+    private void handleCart(HttpExchange exchange, String method, OrderService.Session session,
+            Map<String, String> query) throws IOException {
+        if (!method.equals("GET")) {
+            Restaurant restaurant = menuManager.findRestaurant(query.get("restaurant"));
+            Meal meal = restaurant == null ? null : restaurant.findMeal(query.get("meal"));
+            if (meal == null) {
+                sendError(exchange, 400, "Unknown meal " + query.get("meal"));
+                return;
+            }
+            if (method.equals("POST")) {
+                try {
+                    session.addItem(restaurant, meal);
+                } catch (ItemUnavailableException e) {
+                    sendError(exchange, 409, e.getMessage());
+                    return;
+                }
+            } else if (method.equals("DELETE")) {
+                session.removeItem(meal);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+        }
+        send(exchange, 200, cartJson(session));
+    }
+    
+    private void handleOrder(HttpExchange exchange, String id) throws IOException {
+        int orderId;
+        try {
+            orderId = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            sendError(exchange, 404, "Unknown order " + id);
+            return;
+        }
+        StringBuilder json = new StringBuilder(256);
+        Order order = orderService.getActiveOrder(orderId);
+        if (order != null) {
+            appendOrder(json, order);
+            send(exchange, 200, json);
+            return;
+        }
+        // Delivered orders are only in the history, once the journal has written them
+        OrderRecord record = orderService.findPastOrder(orderId);
+        if (record == null) {
+            sendError(exchange, 404, "Unknown order " + id);
+            return;
+        }
+        json.append("{\"orderId\":").append(record.getOrderId()).append(",\"restaurant\":");
+        appendString(json, record.getRestaurantId());
+        json.append(",\"status\":\"").append(Order.OrderStatus.DELIVERED.name())
+            .append("\",\"totalPaise\":").append(record.getTotalPaise()).append('}');
+        send(exchange, 200, json);
+    }
+    
+    static StringBuilder menuJson(Restaurant restaurant) {
+        List<Meal> menu = restaurant.getMenu();
+        StringBuilder json = new StringBuilder(160 * menu.size() + 64).append("{\"restaurant\":");
+        appendString(json, restaurant.getId());
+        json.append(",\"meals\":[");
+        for (int i = 0; i < menu.size(); i++) {
+            Meal meal = menu.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":");
+            appendString(json, meal.getId());
+            json.append(",\"name\":");
+            appendString(json, meal.getName());
+            json.append(",\"category\":\"").append(meal.getCategory().name())
+                .append("\",\"pricePaise\":").append(meal.getPricePaise())
+                .append(",\"calories\":").append(meal.getCalories())
+                .append(",\"prepSeconds\":").append(meal.getPrepTimeSeconds())
+                .append(",\"available\":").append(meal.isAvailable())
+                .append(",\"description\":");
+            appendString(json, meal.getDescription());
+            json.append('}');
+        }
+        return json.append("]}");
+    }
+    
+    private static StringBuilder cartJson(OrderService.Session session) {
+        List<CartLine> lines;
+        long totalPaise;
+        synchronized (session) { // One consistent view of lines and total
+            lines = session.getLines();
+            totalPaise = session.getTotalPaise();
+        }
+        StringBuilder json = new StringBuilder(96 * lines.size() + 64).append("{\"sessionId\":");
+        appendString(json, session.getId());
+        json.append(",\"items\":[");
+        for (int i = 0; i < lines.size(); i++) {
+            CartLine line = lines.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"mealId\":");
+            appendString(json, line.getMeal().getId());
+            json.append(",\"name\":");
+            appendString(json, line.getMeal().getName());
+            json.append(",\"quantity\":").append(line.getQuantity())
+                .append(",\"linePaise\":").append(line.getLinePaise()).append('}');
+        }
+        return json.append("],\"totalPaise\":").append(totalPaise).append('}');
+    }
+    
+    // Up to three complements from the cart's restaurant, as the window suggests
+    private static StringBuilder recommendationsJson(OrderService.Session session) {
+        List<Meal> cart = new ArrayList<>();
+        Restaurant restaurant;
+        synchronized (session) {
+            for (CartLine line : session.getLines()) {
+                cart.add(line.getMeal());
+            }
+            restaurant = session.getRestaurant();
+        }
+        List<Meal> picks = restaurant == null ? Collections.emptyList()
+            : CoOccurrenceRecommender.getInstance().recommend(cart, restaurant, 3);
+        StringBuilder json = new StringBuilder(96 * picks.size() + 2).append('[');
+        for (int i = 0; i < picks.size(); i++) {
+            Meal meal = picks.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"mealId\":");
+            appendString(json, meal.getId());
+            json.append(",\"name\":");
+            appendString(json, meal.getName());
+            json.append(",\"pricePaise\":").append(meal.getPricePaise()).append('}');
+        }
+        return json.append(']');
+    }
+    
+    private static void appendRestaurant(StringBuilder json, Restaurant restaurant) {
+        json.append("{\"id\":");
+        appendString(json, restaurant.getId());
+        json.append(",\"name\":");
+        appendString(json, restaurant.getName());
+        json.append(",\"cuisine\":");
+        appendString(json, restaurant.getCuisine());
+        json.append(",\"deliveryFeePaise\":").append(restaurant.getDeliveryFeePaise())
+            .append(",\"x\":").append(restaurant.getX())
+            .append(",\"y\":").append(restaurant.getY()).append('}');
+    }
+    
+    private static void appendOrder(StringBuilder json, Order order) {
+        json.append("{\"orderId\":").append(order.getOrderId()).append(",\"restaurant\":");
+        appendString(json, order.getRestaurant().getId());
+        json.append(",\"status\":\"").append(order.getStatus().name())
+            .append("\",\"items\":").append(order.getItemCount())
+            .append(",\"totalPaise\":").append(order.getTotalPaise())
+            .append(",\"estimatedDeliveryAt\":").append(order.getEstimatedDeliveryAt());
+        Rider rider = order.getRider();
+        if (rider != null) {
+            json.append(",\"rider\":");
+            appendString(json, rider.getName());
+        }
+        json.append('}');
+    }
+    
+    static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+    
+    // Query values in this API are ids, so only %-escapes need decoding
+    private static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> query = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+    
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        send(exchange, status, json.append('}'));
+    }
+    
+    // Cached bytes go out as they are: no JSON encoding, compression or copying per request
+    private static void sendMenu(HttpExchange exchange, MenuPayloadCache.Payload payload) throws IOException {
+        Headers request = exchange.getRequestHeaders();
+        String acceptEncoding = request.getFirst("Accept-Encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        Headers response = exchange.getResponseHeaders();
+        response.set("ETag", gzip ? payload.getGzipEtag() : payload.getEtag());
+        response.set("Cache-Control", "no-cache"); // Stock changes, so clients revalidate every time
+        response.set("Vary", "Accept-Encoding");
+        if (payload.matches(request.getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        byte[] body = gzip ? payload.getGzip() : payload.getJson();
+        response.set("Content-Type", "application/json; charset=utf-8");
+        if (gzip) {
+            response.set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    // --load-test: drives a local server end to end with concurrent shoppers, each
+    // opening a session, reading a menu, adding two meals, checking the cart,
+    // ordering and polling the order. Orders go to a scratch history, not the real one.
+    static void loadTest(int requests, int clients) throws Exception {
+        File scratch = Files.createTempDirectory("foodflex-load").toFile();
+        File dataFile = new File(scratch, OrderHistory.DATA_FILE);
+        File indexFile = new File(scratch, OrderHistory.INDEX_FILE);
+        OrderHistory history = OrderHistory.open(dataFile.getPath(), indexFile.getPath());
+        OrderJournal journal = new OrderJournal(history, 200);
+        MenuManager menuManager = new MenuManager();
+        OrderService service = new OrderService(menuManager, journal, PopularityTracker.getInstance(),
+            Inventory.getInstance());
+        ApiServer api = new ApiServer(service, 0);
+        api.start();
+        String base = "http://localhost:" + api.getPort() + "/api/";
+        List<Restaurant> restaurants = menuManager.getRestaurants();
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger failures = new AtomicInteger();
+        
+        Thread[] shoppers = new Thread[clients];
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            shoppers[c] = new Thread(() -> {
+                Random random = new Random();
+                try {
+                    while (remaining.get() > 0) {
+                        Restaurant restaurant = restaurants.get(random.nextInt(restaurants.size()));
+                        List<Meal> menu = restaurant.getMenu();
+                        String cartQuery = "?restaurant=" + restaurant.getId() + "&meal=";
+                        String session = idFrom(call(latency, remaining, failures, "POST", base + "sessions"),
+                            "sessionId", failures);
+                        if (session == null) {
+                            continue;
+                        }
+                        call(latency, remaining, failures, "GET", base + "restaurants/" + restaurant.getId() + "/menu");
+                        for (int k = 0; k < 2; k++) {
+                            Meal meal = menu.get(random.nextInt(menu.size()));
+                            call(latency, remaining, failures, "POST", base + "sessions/" + session + "/cart" + cartQuery + meal.getId());
+                        }
+                        call(latency, remaining, failures, "GET", base + "sessions/" + session + "/cart");
+                        String order = idFrom(call(latency, remaining, failures, "POST",
+                            base + "sessions/" + session + "/orders?restaurant=" + restaurant.getId()), "orderId", failures);
+                        if (order == null) {
+                            continue;
+                        }
+                        call(latency, remaining, failures, "GET", base + "orders/" + order);
+                    }
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                    System.err.println("Shopper stopped: " + e);
+                }
+            }, "shopper-" + c);
+            shoppers[c].start();
+        }
+        for (Thread shopper : shoppers) {
+            shopper.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        api.stop();
+        journal.close();
+        history.close();
+        
+        System.out.printf("%d requests from %d clients in %.2f s: %.0f requests/s, %d failed (%s)%n",
+            latency.getCount(), clients, seconds, latency.getCount() / seconds, failures.get(),
+            api.isVirtualThreads() ? "virtual threads" : POOL_THREADS + " pool threads");
+        System.out.printf("Latency us: p50 %d  p99 %d  p99.9 %d  max %d%n", latency.getValueAtPercentile(50),
+            latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9), latency.getMax());
+        dataFile.delete();
+        indexFile.delete();
+        scratch.delete();
+    }
+    
+    // Body of the reply, or null when the status was an error (already counted as a failure)
+    private static String call(LatencyHistogram latency, AtomicInteger remaining,
+            AtomicInteger failures, String method, String url) throws IOException {
+        remaining.decrementAndGet();
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        String body = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        if (in != null) {
+            in.close(); // Returns the connection to the keep-alive cache
+        }
+        latency.record((System.nanoTime() - start) / 1000);
+        if (status >= 400) {
+            failures.incrementAndGet();
+            return null;
+        }
+        return body;
+    }
+    
+    // Id field of a reply; a successful reply without one counts as a failure
+    private static String idFrom(String reply, String name, AtomicInteger failures) {
+        if (reply == null) {
+            return null;
+        }
+        String id = field(reply, name);
+        if (id == null) {
+            failures.incrementAndGet();
+        }
+        return id;
+    }
+    
+    // Value of a top-level string or number field in one of this API's replies,
+    // or null when the field is missing, empty or cut off
+    private static String field(String json, String name) {
+        int at = json.indexOf("\"" + name + "\":");
+        if (at < 0) {
+            return null;
+        }
+        int from = at + name.length() + 3;
+        if (from < json.length() && json.charAt(from) == '"') {
+            int end = json.indexOf('"', from + 1);
+            return end > from + 1 ? json.substring(from + 1, end) : null;
+        }
+        int to = from;
+        while (to < json.length() && Character.isDigit(json.charAt(to))) {
+            to++;
+        }
+        return to > from ? json.substring(from, to) : null;
+    }
+}
+
+// ================== ORDER METRICS ==================
+// Lock-free latency histograms for order placement, each kitchen stage and
+// journal writes, plus throughput counters, published over JMX as
+// foodflex:type=OrderMetrics (jconsole, VisualVM or any JMX client).
+// Attributes are <histogram>Count/MeanMicros/P50Micros/P99Micros/P999Micros/MaxMicros.
+final class OrderMetrics implements DynamicMBean {
+    static final String OBJECT_NAME = "foodflex:type=OrderMetrics";
+    private static final String[] STATS = {"Count", "MeanMicros", "P50Micros", "P99Micros", "P999Micros", "MaxMicros"};
+    private static final OrderMetrics INSTANCE = new OrderMetrics();
+    
+    private final LatencyHistogram placement = new LatencyHistogram();
+    private final LatencyHistogram journalWrite = new LatencyHistogram();
+    private final LatencyHistogram journalSync = new LatencyHistogram();
+    private final LatencyHistogram[] stages = new LatencyHistogram[Order.OrderStatus.values().length];
+    private final LongAdder ordersDelivered = new LongAdder();
+    private final LongAdder ordersJournaled = new LongAdder();
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> counters = new LinkedHashMap<>();
+    private final MBeanInfo info;
+    
+    private OrderMetrics() {
+        histograms.put("Placement", placement);
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            stages[status.ordinal()] = new LatencyHistogram();
+            if (status != Order.OrderStatus.DELIVERED) { // Final state, it has no duration
+                histograms.put("Stage" + status.name().charAt(0) + status.name().substring(1).toLowerCase(),
+                    stages[status.ordinal()]);
+            }
+        }
+        histograms.put("JournalBatchWrite", journalWrite);
+        histograms.put("JournalSync", journalSync);
+        counters.put("OrdersPlaced", placement::getCount);
+        counters.put("OrdersDelivered", ordersDelivered::sum);
+        counters.put("OrdersJournaled", ordersJournaled::sum);
+        
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String counter : counters.keySet()) {
+            attributes.add(new MBeanAttributeInfo(counter, "long", counter, true, false, false));
+        }
+        for (String name : histograms.keySet()) {
+            for (String stat : STATS) {
+                attributes.add(new MBeanAttributeInfo(name + stat, "long", name + " " + stat, true, false, false));
+            }
+        }
+        info = new MBeanInfo(OrderMetrics.class.getName(), "FoodFlex order latency and throughput",
+            attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            e.printStackTrace(); // Metrics still work in-process without JMX
+        }
+    }
+    
+    public static OrderMetrics getInstance() { return INSTANCE; }
+    
+    public void recordPlacement(long micros) { placement.record(micros); }
+    public void recordStage(Order.OrderStatus stage, long millis) { stages[stage.ordinal()].record(millis * 1000); }
+    public void recordDelivered() { ordersDelivered.increment(); }
+    
+    public void recordJournalWrite(int orders, long micros) {
+        journalWrite.record(micros);
+        ordersJournaled.add(orders);
+    }
+    
+    public void recordJournalSync(long micros) { journalSync.record(micros); }
+    
+    public LatencyHistogram getPlacement() { return placement; }
+    public LatencyHistogram getStage(Order.OrderStatus stage) { return stages[stage.ordinal()]; }
+    
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongSupplier counter = counters.get(attribute);
+        if (counter != null) {
+            return counter.getAsLong();
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            if (attribute.startsWith(entry.getKey())) {
+                LatencyHistogram h = entry.getValue();
+                switch (attribute.substring(entry.getKey().length())) {
+                    case "Count": return h.getCount();
+                    case "MeanMicros": return h.getMean();
+                    case "P50Micros": return h.getValueAtPercentile(50);
+                    case "P99Micros": return h.getValueAtPercentile(99);
+                    case "P999Micros": return h.getValueAtPercentile(99.9);
+                    case "MaxMicros": return h.getMax();
+                    default: break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+    
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Unknown attributes are left out, as the DynamicMBean contract allows
+            }
+        }
+        return list;
+    }
+    
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Order metrics are read-only: " + attribute.getName());
+    }
+    
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) { return new AttributeList(); }
+    
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+        throw new MBeanException(new UnsupportedOperationException(actionName));
+    }
+    
+    @Override
+    public MBeanInfo getMBeanInfo() { return info; }
+}
+
+// Log-linear histogram in the style of HdrHistogram: exact below 64, then
+// 32 sub-buckets per power of two (about 3% precision). Recording is a
+// single atomic increment, so it is safe and cheap from any thread.
+class LatencyHistogram {
+    private static final int LINEAR = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 62;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - 6 + 1) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        total.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+    
+    static int indexOf(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v); // >= 6
+        int subBucket = (int) (v >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 6) * SUB_BUCKETS + subBucket;
+    }
+    
+    // Largest value that falls in the bucket
+    static long highestValueIn(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 6;
+        int subBucket = (index - LINEAR) % SUB_BUCKETS;
+        long low = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+        return low + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+    
+    public long getCount() { return total.sum(); }
+    public long getMax() { return max.get(); }
+    
+    public long getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : sum.sum() / count;
+    }
+    
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,25 @@
+package foodflex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// Catalog shared by the benchmarks; run from the repository root
+final class BenchmarkData {
+    static final MenuManager MENU_MANAGER = new MenuManager(new File(MenuCatalog.CATALOG_DIR));
+    
+    private BenchmarkData() {}
+    
+    static Restaurant restaurant() {
+        return MENU_MANAGER.getRestaurants().get(0);
+    }
+    
+    // Meals from every restaurant, so large carts have distinct lines
+    static List<Meal> allMeals() {
+        List<Meal> meals = new ArrayList<>();
+        for (Restaurant r : MENU_MANAGER.getRestaurants()) {
+            meals.addAll(r.getMenu());
+        }
+        return meals;
+    }
+}
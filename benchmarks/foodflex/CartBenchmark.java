@@ -0,0 +1,66 @@
+package foodflex;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cart.addItem/removeItem/getTotalPaise on small and catering-sized carts
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CartBenchmark {
+    @Param({"10", "500"})
+    int cartItems;
+    
+    private Cart cart;
+    private Meal meal;
+    private List<Meal> legacyItems;
+    
+    @Setup
+    public void setUp() throws ItemUnavailableException {
+        List<Meal> meals = BenchmarkData.allMeals();
+        cart = new Cart();
+        legacyItems = new ArrayList<>();
+        for (int i = 0; i < cartItems; i++) {
+            Meal m = meals.get(i % meals.size());
+            cart.addItem(m);
+            legacyItems.add(m);
+        }
+        meal = meals.get(cartItems / 2 % meals.size());
+    }
+    
+    @Benchmark
+    public long addThenRemove() throws ItemUnavailableException {
+        cart.addItem(meal);
+        cart.removeItem(meal);
+        return cart.getItemCount();
+    }
+    
+    @Benchmark
+    public long totalPaise() {
+        return cart.getTotalPaise();
+    }
+    
+    @Benchmark
+    public int totalCalories() {
+        return cart.getTotalCalories();
+    }
+    
+    // What getTotalPrice used to do: stream the whole item list on every call
+    @Benchmark
+    public long legacyStreamTotal() {
+        return legacyItems.stream().mapToLong(Meal::getPricePaise).sum();
+    }
+    
+    @Benchmark
+    public void legacyListRemove(Blackhole bh) {
+        legacyItems.add(meal);
+        bh.consume(legacyItems.remove(meal));
+    }
+}
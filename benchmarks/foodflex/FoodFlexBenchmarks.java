@@ -0,0 +1,16 @@
+package foodflex;
+
+import org.openjdk.jmh.Main;
+
+// Entry point for the JMH suite: always adds the GC profiler so every run
+// reports allocation rate next to ops/s. Extra arguments go straight to JMH,
+// e.g. "CartBenchmark -f 1 -wi 2 -i 3".
+public class FoodFlexBenchmarks {
+    public static void main(String[] args) throws Exception {
+        String[] jmhArgs = new String[args.length + 2];
+        jmhArgs[0] = "-prof";
+        jmhArgs[1] = "gc";
+        System.arraycopy(args, 0, jmhArgs, 2, args.length);
+        Main.main(jmhArgs);
+    }
+}
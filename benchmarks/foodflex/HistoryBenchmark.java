@@ -0,0 +1,95 @@
+package foodflex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Order history appends: the old open/write/close FileWriter per order, a
+// direct append to the mapped binary history, and the journal enqueue that
+// order placement actually waits on. The two binary appends run as fixed
+// batches of APPENDS_PER_ITERATION (single-shot time per batch), so no
+// iteration can grow its files or the journal queue without bound.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HistoryBenchmark {
+    static final int APPENDS_PER_ITERATION = 100_000; // 25 MB of records
+    
+    private Order order;
+    private File dir;
+    private File legacyFile;
+    private OrderHistory history;
+    private OrderHistory journalHistory;
+    private OrderJournal journal;
+    
+    @Setup(Level.Trial)
+    public void setUpOrder() throws ItemUnavailableException {
+        Restaurant restaurant = BenchmarkData.restaurant();
+        List<Meal> menu = restaurant.getMenu();
+        Cart cart = new Cart();
+        for (int i = 0; i < 3; i++) {
+            cart.addItem(menu.get(i));
+        }
+        order = new Order(cart.getLines(), restaurant);
+    }
+    
+    // Fresh files per iteration keep the history from growing across the whole run
+    @Setup(Level.Iteration)
+    public void setUpFiles() throws IOException {
+        dir = java.nio.file.Files.createTempDirectory("foodflex-bench").toFile();
+        legacyFile = new File(dir, "order_history.txt");
+        history = OrderHistory.open(new File(dir, "h.dat").getPath(), new File(dir, "h.idx").getPath());
+        journalHistory = OrderHistory.open(new File(dir, "j.dat").getPath(), new File(dir, "j.idx").getPath());
+        journal = new OrderJournal(journalHistory, 200);
+    }
+    
+    @TearDown(Level.Iteration)
+    public void tearDownFiles() throws IOException {
+        journal.close(); // Drains whatever the iteration queued before the files go
+        journalHistory.close();
+        history.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+    
+    @Benchmark
+    public void legacyFileWriter() throws IOException {
+        try (FileWriter fw = new FileWriter(legacyFile, true)) {
+            fw.write("Order #" + order.getOrderId() + 
+                     " | Restaurant: " + order.getRestaurant().getName() +
+                     " | Total: ₹" + String.format("%.2f", order.getTotalPaise() / 100.0) +
+                     " | Time: " + new Date() + "\n");
+        }
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = APPENDS_PER_ITERATION)
+    @Measurement(iterations = 5, batchSize = APPENDS_PER_ITERATION)
+    public void mappedHistoryAppend() throws IOException {
+        history.append(order);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = APPENDS_PER_ITERATION)
+    @Measurement(iterations = 5, batchSize = APPENDS_PER_ITERATION)
+    public void journalEnqueue() {
+        journal.append(order);
+    }
+}
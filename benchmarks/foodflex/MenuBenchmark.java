@@ -0,0 +1,42 @@
+package foodflex;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.swing.DefaultListModel;
+import java.util.concurrent.TimeUnit;
+
+// Filling one menu tab: the stream filter createMenuPanel used to run per tab
+// against the per-restaurant category index
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MenuBenchmark {
+    private Restaurant restaurant;
+    
+    @Setup
+    public void setUp() {
+        restaurant = BenchmarkData.restaurant();
+        restaurant.getMenu(); // Load outside the measurement
+    }
+    
+    @Benchmark
+    public DefaultListModel<Meal> legacyStreamFilter() {
+        DefaultListModel<Meal> model = new DefaultListModel<>();
+        model.ensureCapacity(30);
+        restaurant.getMenu().stream()
+            .filter(item -> MainCourse.class.isInstance(item))
+            .forEach(model::addElement);
+        return model;
+    }
+    
+    @Benchmark
+    public void categoryIndex(Blackhole bh) {
+        for (MealCategory category : MealCategory.values()) {
+            bh.consume(new FoodFlexGUI.MealListModel(restaurant.getMeals(category)));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package foodflex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Order construction and getTotalPaise for a typical and a catering order
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBenchmark {
+    @Param({"3", "100"})
+    int lines;
+    
+    private Restaurant restaurant;
+    private List<CartLine> cartLines;
+    private Order order;
+    
+    @Setup
+    public void setUp() throws ItemUnavailableException {
+        restaurant = BenchmarkData.restaurant();
+        List<Meal> meals = BenchmarkData.allMeals();
+        Cart cart = new Cart();
+        for (int i = 0; i < lines; i++) {
+            cart.addItem(meals.get(i % meals.size()));
+        }
+        cartLines = cart.getLines();
+        order = new Order(cartLines, restaurant);
+    }
+    
+    @Benchmark
+    public Order construct() {
+        return new Order(cartLines, restaurant);
+    }
+    
+    @Benchmark
+    public long totalPaise() {
+        return order.getTotalPaise();
+    }
+}
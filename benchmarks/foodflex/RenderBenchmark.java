@@ -0,0 +1,47 @@
+package foodflex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-cell text building: the HTML the renderers used to format on every
+// paint against the cached CellText entries they build now
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+    private Meal meal;
+    private CartLine line;
+    
+    @Setup
+    public void setUp() {
+        meal = BenchmarkData.restaurant().getMenu().get(0);
+        line = new CartLine(meal, 3);
+    }
+    
+    @Benchmark
+    public String legacyMenuHtml() {
+        return "<html><b>" + meal.getName() + "</b> - <font color='#FF6932'>" + 
+               "₹" + String.format("%.2f", meal.getPricePaise() / 100.0) + "</font><br>" +
+               "<small>" + meal.getDescription() + "</small><br>" +
+               "<font color='#AAAAAA' size='2'>🔥 " + meal.getCalories() + " cal</font></html>";
+    }
+    
+    @Benchmark
+    public Object menuCellText() {
+        return FoodFlexGUI.CellText.forMeal(meal);
+    }
+    
+    @Benchmark
+    public Object cartCellText() {
+        return FoodFlexGUI.CellText.forCartLine(line);
+    }
+    
+    @Benchmark
+    public String moneyFormat() {
+        return Money.format(meal.getPricePaise());
+    }
+}
@@ -0,0 +1,60 @@
+package foodflex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Cart's meal -> line positions under random adds and removes, checked
+// against a plain map of quantities. Removal moves the last line into the
+// freed slot, so every lookup must follow the moved line.
+class CartTest {
+    @Test
+    void positionsFollowSwappedLines() throws ItemUnavailableException {
+        List<Meal> meals = BenchmarkData.allMeals();
+        Random random = new Random(11);
+        Cart cart = new Cart();
+        Map<Meal, Integer> expected = new HashMap<>();
+        for (int op = 0; op < 20_000; op++) {
+            Meal meal = meals.get(random.nextInt(Math.min(meals.size(), 40)));
+            if (random.nextInt(5) < 3) {
+                cart.addItem(meal);
+                expected.merge(meal, 1, Integer::sum);
+            } else {
+                cart.removeItem(meal);
+                expected.computeIfPresent(meal, (m, quantity) -> quantity == 1 ? null : quantity - 1);
+            }
+            if (op % 5_000 == 4_999) {
+                cart.clear();
+                expected.clear();
+            }
+            assertMatches(expected, cart);
+        }
+    }
+
+    private static void assertMatches(Map<Meal, Integer> expected, Cart cart) {
+        assertEquals(expected.size(), cart.getLineCount());
+        long totalPaise = 0;
+        int itemCount = 0;
+        for (int i = 0; i < cart.getLineCount(); i++) {
+            CartLine line = cart.getLine(i);
+            assertEquals(i, cart.indexOf(line.getMeal()));
+            assertEquals((int) expected.get(line.getMeal()), line.getQuantity());
+            totalPaise += line.getLinePaise();
+            itemCount += line.getQuantity();
+        }
+        for (Map.Entry<Meal, Integer> entry : expected.entrySet()) {
+            assertTrue(cart.contains(entry.getKey()));
+            assertSame(entry.getKey(), cart.getLine(cart.indexOf(entry.getKey())).getMeal());
+            assertEquals((int) entry.getValue(), cart.getQuantity(entry.getKey()));
+        }
+        assertEquals(totalPaise, cart.getTotalPaise());
+        assertEquals(itemCount, cart.getItemCount());
+    }
+}
@@ -0,0 +1,108 @@
+package foodflex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// MenuRangeIndex against a brute-force scan. Equal prices may come back in
+// either order, so results are compared by their prices.
+class MenuRangeIndexTest {
+    @Test
+    void emptyIndexAndLimit() {
+        assertTrue(new MenuRangeIndex(new ArrayList<>()).find(new MenuFilter(), 10).isEmpty());
+        List<MenuEntry> entries = entries(new Random(1), 50, 1000);
+        assertTrue(new MenuRangeIndex(entries).find(new MenuFilter(), 0).isEmpty());
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(3);
+        // A narrow price range gives many ties; a wide one needs all 64 bits
+        for (long maxPrice : new long[] {2000, 50_000, 5_000_000_000L}) {
+            List<MenuEntry> entries = entries(random, 5000, maxPrice);
+            MenuRangeIndex index = new MenuRangeIndex(entries);
+            for (int q = 0; q < 300; q++) {
+                MenuFilter filter = randomFilter(random, maxPrice);
+                int limit = 1 + random.nextInt(60);
+                check(entries, filter, limit, index.find(filter, limit));
+            }
+            check(entries, new MenuFilter(), entries.size(), index.find(new MenuFilter(), entries.size()));
+        }
+    }
+
+    private static void check(List<MenuEntry> entries, MenuFilter filter, int limit, List<MenuEntry> results) {
+        List<Long> expected = new ArrayList<>();
+        for (MenuEntry entry : entries) {
+            if (filter.matches(entry.getMeal())) {
+                expected.add(entry.getMeal().getPricePaise());
+            }
+        }
+        Collections.sort(expected);
+        expected = expected.subList(0, Math.min(limit, expected.size()));
+
+        List<Long> prices = new ArrayList<>();
+        Map<MenuEntry, Boolean> seen = new IdentityHashMap<>();
+        for (MenuEntry entry : results) {
+            assertTrue(filter.matches(entry.getMeal()), "Result outside the filter");
+            assertTrue(seen.put(entry, true) == null, "Duplicate result");
+            prices.add(entry.getMeal().getPricePaise());
+        }
+        assertEquals(expected, prices);
+    }
+
+    private static MenuFilter randomFilter(Random random, long maxPrice) {
+        MenuFilter filter = new MenuFilter();
+        if (random.nextBoolean()) {
+            long a = (long) (random.nextDouble() * maxPrice), b = (long) (random.nextDouble() * maxPrice);
+            filter.price(Math.min(a, b), random.nextInt(4) == 0 ? Long.MAX_VALUE : Math.max(a, b));
+        }
+        if (random.nextBoolean()) {
+            int a = random.nextInt(1200), b = random.nextInt(1200);
+            filter.calories(Math.min(a, b), Math.max(a, b));
+        }
+        if (random.nextBoolean()) {
+            int a = random.nextInt(1800), b = random.nextInt(1800);
+            filter.prepSeconds(Math.min(a, b), Math.max(a, b));
+        }
+        if (random.nextInt(3) == 0) {
+            filter.only(MealCategory.values()[random.nextInt(MealCategory.values().length)]);
+        }
+        return filter;
+    }
+
+    private static List<MenuEntry> entries(Random random, int count, long maxPrice) {
+        Restaurant restaurant = BenchmarkData.restaurant();
+        List<MenuEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = "QR" + i;
+            long price = 1 + (long) (random.nextDouble() * maxPrice);
+            int prep = 60 + random.nextInt(1740);
+            int calories = random.nextInt(1200);
+            Meal meal;
+            switch (random.nextInt(4)) {
+                case 0:
+                    meal = new Starter(id, "Starter " + i, price, prep, true, "", calories);
+                    break;
+                case 1:
+                    meal = new MainCourse(id, "Main " + i, price, prep, true, "", calories);
+                    break;
+                case 2:
+                    meal = new Dessert(id, "Dessert " + i, price, prep, true, "", calories);
+                    break;
+                default:
+                    meal = new Beverage(id, "Beverage " + i, price, prep, true, "", calories);
+                    break;
+            }
+            entries.add(new MenuEntry(meal, restaurant));
+        }
+        return entries;
+    }
+}
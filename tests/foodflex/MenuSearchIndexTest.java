@@ -0,0 +1,178 @@
+package foodflex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// MenuSearchIndex against a brute-force scorer over every entry and term
+class MenuSearchIndexTest {
+    private static final float[] FACTORS = {1f, 0.6f, 0.4f}; // Exact, prefix, typo
+
+    @Test
+    void withinOneEdit() {
+        assertTrue(MenuSearchIndex.withinOneEdit("chicken", "chicken"));
+        assertTrue(MenuSearchIndex.withinOneEdit("chiken", "chicken"));
+        assertTrue(MenuSearchIndex.withinOneEdit("chickken", "chicken"));
+        assertTrue(MenuSearchIndex.withinOneEdit("chicxen", "chicken"));
+        assertTrue(MenuSearchIndex.withinOneEdit("cihcken", "chicken"));
+        assertFalse(MenuSearchIndex.withinOneEdit("chkcien", "chicken"));
+        assertFalse(MenuSearchIndex.withinOneEdit("chikn", "chicken"));
+    }
+
+    @Test
+    void findsTyposAndPrefixes() {
+        List<MenuEntry> entries = new ArrayList<>();
+        entries.add(entry("QS1", "Butter Chicken", "creamy tomato gravy"));
+        entries.add(entry("QS2", "Chicken Tikka", "smoky grilled chicken"));
+        entries.add(entry("QS3", "Paneer Tikka", "grilled cottage cheese"));
+        entries.add(entry("QS4", "Mango Lassi", "sweet yoghurt drink"));
+        entries.add(entry("QS5", "Masala Chai", "spiced tea"));
+        MenuSearchIndex index = new MenuSearchIndex(entries);
+
+        assertEquals(List.of("Chicken Tikka", "Butter Chicken"), names(index.search("chick", 10)));
+        assertEquals(List.of("Chicken Tikka", "Butter Chicken"), names(index.search("chiken", 10)));
+        assertEquals(List.of("Paneer Tikka"), names(index.search("paner tik", 10)));
+        assertEquals(List.of("Mango Lassi"), names(index.search("yogurt", 10)));
+        assertEquals(List.of("Masala Chai"), names(index.search("chia", 10)));
+        assertTrue(index.search("cai", 10).isEmpty(), "Typos need four letters");
+        assertTrue(index.search("sushi", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(7);
+        String[] words = new String[150];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = randomWord(random, 3 + random.nextInt(6));
+        }
+        List<MenuEntry> entries = new ArrayList<>();
+        for (int e = 0; e < 2000; e++) {
+            entries.add(entry("QB" + e, phrase(random, words, 1 + random.nextInt(3)), phrase(random, words, random.nextInt(4))));
+        }
+        MenuSearchIndex index = new MenuSearchIndex(entries);
+
+        for (int q = 0; q < 500; q++) {
+            String query = queryWord(random, words);
+            if (random.nextBoolean()) {
+                query += " " + queryWord(random, words);
+            }
+            int limit = random.nextBoolean() ? 10 : MenuSearchIndex.MAX_RESULTS;
+            assertEquals(labels(entries, expected(entries, query, limit)), labels(entries, index.search(query, limit)), query);
+        }
+    }
+
+    // A word as typed: whole, cut short, or with one typo
+    private static String queryWord(Random random, String[] words) {
+        String word = words[random.nextInt(words.length)];
+        int at = random.nextInt(word.length());
+        switch (random.nextInt(5)) {
+            case 0:
+                return word;
+            case 1:
+                return word.substring(0, 1 + at);
+            case 2:
+                return word.substring(0, at) + (char) ('a' + random.nextInt(6)) + word.substring(at + 1);
+            case 3:
+                return word.substring(0, at) + (char) ('a' + random.nextInt(6)) + word.substring(at);
+            default:
+                return word.substring(0, at) + word.substring(at + 1);
+        }
+    }
+
+    // Sum over query words of each word's best hit, name hits weighing 3 and
+    // description hits 1; ties go to the shorter name, then the earlier entry
+    private static List<MenuEntry> expected(List<MenuEntry> entries, String query, int limit) {
+        List<String> tokens = MenuSearchIndex.tokenize(query);
+        Map<MenuEntry, Float> scores = new HashMap<>();
+        for (MenuEntry entry : entries) {
+            Map<String, Integer> weights = new HashMap<>();
+            for (String term : MenuSearchIndex.tokenize(entry.getMeal().getDescription())) {
+                weights.put(term, 1);
+            }
+            for (String term : MenuSearchIndex.tokenize(entry.getMeal().getName())) {
+                weights.put(term, 3);
+            }
+            float score = 0;
+            for (String token : tokens) {
+                float best = 0;
+                for (Map.Entry<String, Integer> w : weights.entrySet()) {
+                    int kind = kind(token, w.getKey());
+                    if (kind >= 0) {
+                        best = Math.max(best, FACTORS[kind] * w.getValue());
+                    }
+                }
+                if (best == 0) {
+                    score = 0;
+                    break;
+                }
+                score += best;
+            }
+            if (score > 0) {
+                scores.put(entry, score);
+            }
+        }
+        List<MenuEntry> matches = new ArrayList<>(entries);
+        matches.removeIf(e -> !scores.containsKey(e));
+        // A stable sort keeps entry order among equals
+        matches.sort(Comparator.comparing((MenuEntry e) -> -scores.get(e))
+            .thenComparingInt(e -> e.getMeal().getName().length()));
+        return matches.subList(0, Math.min(limit, matches.size()));
+    }
+
+    private static int kind(String token, String term) {
+        if (term.equals(token)) {
+            return 0;
+        }
+        if (term.startsWith(token)) {
+            return 1;
+        }
+        return token.length() >= 4 && MenuSearchIndex.withinOneEdit(token, term) ? 2 : -1;
+    }
+
+    // Few letters, so many words share prefixes and sit one edit apart
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(6)));
+        }
+        return sb.toString();
+    }
+
+    private static String phrase(Random random, String[] words, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : " ").append(words[random.nextInt(words.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static MenuEntry entry(String id, String name, String description) {
+        return new MenuEntry(new Starter(id, name, 10000, 300, true, description, 200), BenchmarkData.restaurant());
+    }
+
+    private static List<String> names(List<MenuEntry> entries) {
+        List<String> names = new ArrayList<>();
+        for (MenuEntry entry : entries) {
+            names.add(entry.getMeal().getName());
+        }
+        return names;
+    }
+
+    private static List<String> labels(List<MenuEntry> all, List<MenuEntry> entries) {
+        List<String> labels = new ArrayList<>();
+        for (MenuEntry entry : entries) {
+            labels.add("#" + all.indexOf(entry) + " " + entry.getMeal().getName() + " | " + entry.getMeal().getDescription());
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,244 @@
+package foodflex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// SessionStore's open addressing, compaction and spill, checked against a
+// plain map of what each session should hold. Spilling is on when mvn test
+// sets foodflex.sessions.spillDir; without it evicted sessions are dropped.
+class SessionStoreTest {
+    @TempDir
+    File dir;
+
+    private OrderHistory history;
+    private OrderJournal journal;
+    private Inventory inventory;
+    private OrderService service;
+    private Restaurant restaurant;
+    private List<Meal> menu;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        history = OrderHistory.open(new File(dir, "h.dat").getPath(), new File(dir, "h.idx").getPath());
+        journal = new OrderJournal(history, 200);
+        inventory = new Inventory(Inventory.UNLIMITED, 60_000);
+        service = new OrderService(BenchmarkData.MENU_MANAGER, journal, PopularityTracker.getInstance(), inventory);
+        restaurant = BenchmarkData.restaurant();
+        menu = restaurant.getMenu();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        journal.close();
+        history.close();
+    }
+
+    @Test
+    void keyOf() {
+        assertEquals(42, SessionStore.keyOf("S42"));
+        assertEquals(-1, SessionStore.keyOf("S"));
+        assertEquals(-1, SessionStore.keyOf("X42"));
+        assertEquals(-1, SessionStore.keyOf("S4a"));
+        assertEquals(-1, SessionStore.keyOf(null));
+    }
+
+    // Random opens and closes, so deletes shift entries back through long probe runs
+    @Test
+    void deletesKeepOtherSessionsReachable() throws Exception {
+        Random random = new Random(5);
+        Map<String, Integer> expected = new HashMap<>(); // Session id -> menu position of its one meal
+        List<String> closed = new ArrayList<>();
+        for (int op = 0; op < 50_000; op++) {
+            if (expected.isEmpty() || random.nextInt(3) != 0) {
+                OrderService.Session session = service.openSession();
+                int meal = random.nextInt(menu.size());
+                session.addItem(restaurant, menu.get(meal));
+                expected.put(session.getId(), meal);
+            } else {
+                String id = new ArrayList<>(expected.keySet()).get(random.nextInt(expected.size()));
+                service.closeSession(id);
+                expected.remove(id);
+                closed.add(id);
+            }
+            if (op % 5000 == 0) {
+                checkSessions(expected);
+            }
+        }
+        checkSessions(expected);
+        for (String id : closed) {
+            assertNull(service.getSession(id), id);
+        }
+        assertEquals(expected.size(), service.getSessionCount());
+    }
+
+    @Test
+    void compactedSessionsRestore() throws Exception {
+        Meal limited = menu.get(0);
+        inventory.setStock(limited, 100);
+        OrderService.Session session = service.openSession();
+        session.addItem(restaurant, limited);
+        session.addItem(restaurant, limited);
+        session.addItem(restaurant, menu.get(1));
+        OrderService.Session pinned = service.openPinnedSession();
+        pinned.addItem(restaurant, limited);
+        List<CartLine> lines = session.getLines();
+        long total = session.getTotalPaise();
+        assertEquals(97, inventory.getAvailable(limited));
+
+        SessionStore store = service.getSessionStore();
+        store.sweepAll(System.currentTimeMillis() + SessionStore.COMPACT_MILLIS);
+        assertEquals(1, store.getCompactCount());
+        assertEquals(1, store.getLiveCount());
+        assertEquals(99, inventory.getAvailable(limited), "Compaction gives back reserved stock");
+
+        OrderService.Session restored = service.getSession(session.getId());
+        assertSameLines(lines, restored.getLines());
+        assertEquals(total, restored.getTotalPaise());
+        assertSame(restaurant, restored.getRestaurant());
+        assertSame(pinned, service.getSession(pinned.getId()));
+        assertEquals(2, store.getLiveCount());
+    }
+
+    @Test
+    void evictedSessionsSpillOrDrop() throws Exception {
+        OrderService.Session session = service.openSession();
+        session.addItem(restaurant, menu.get(2));
+        session.addItem(restaurant, menu.get(3));
+        List<CartLine> lines = session.getLines();
+        SessionStore store = service.getSessionStore();
+        store.sweepAll(System.currentTimeMillis() + SessionStore.EVICT_MILLIS + SessionStore.COMPACT_MILLIS);
+
+        if (SessionStore.SPILL_DIR == null) {
+            assertEquals(0, store.size());
+            assertNull(service.getSession(session.getId()));
+        } else {
+            assertEquals(1, store.getSpilledCount());
+            OrderService.Session restored = service.getSession(session.getId());
+            assertNotNull(restored);
+            assertSameLines(lines, restored.getLines());
+            assertSame(restaurant, restored.getRestaurant());
+            assertEquals(0, store.getSpilledCount());
+        }
+    }
+
+    @Test
+    void spilledSessionsExpire() throws Exception {
+        OrderService.Session session = service.openSession();
+        session.addItem(restaurant, menu.get(2));
+        SessionStore store = service.getSessionStore();
+        long evicted = System.currentTimeMillis() + SessionStore.EVICT_MILLIS + SessionStore.COMPACT_MILLIS;
+        store.sweepAll(evicted);
+        store.sweepAll(evicted + SessionStore.SPILL_EXPIRE_MILLIS);
+
+        assertEquals(0, store.size());
+        assertNull(service.getSession(session.getId()));
+        if (SessionStore.SPILL_DIR != null) {
+            File[] files = new File(SessionStore.SPILL_DIR).listFiles();
+            assertEquals(0, files == null ? 0 : files.length, "Spill files are deleted once unused");
+        }
+    }
+
+    // Lookups, opens and closes on several threads while another keeps compacting every session
+    @Test
+    void concurrentLookupsDuringSweeps() throws Exception {
+        int threads = 4;
+        int perThread = 2000;
+        Map<String, Integer> expected = new ConcurrentHashMap<>();
+        List<List<String>> owned = new ArrayList<>();
+        Random random = new Random(9);
+        for (int t = 0; t < threads; t++) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < perThread; i++) {
+                OrderService.Session session = service.openSession();
+                int meal = random.nextInt(menu.size());
+                session.addItem(restaurant, menu.get(meal));
+                expected.put(session.getId(), meal);
+                ids.add(session.getId());
+            }
+            owned.add(ids);
+        }
+        Set<String> empty = ConcurrentHashMap.newKeySet();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread sweeper = new Thread(() -> {
+            while (!done.get()) {
+                service.getSessionStore().sweepAll(System.currentTimeMillis() + SessionStore.COMPACT_MILLIS);
+            }
+        });
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            List<String> mine = owned.get(t);
+            long seed = t;
+            workers.add(new Thread(() -> {
+                try {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < 20_000 && !mine.isEmpty(); i++) {
+                        String probe = mine.get(r.nextInt(mine.size()));
+                        OrderService.Session found = service.getSession(probe);
+                        assertNotNull(found, probe);
+                        assertSame(menu.get(expected.get(probe)), found.getLines().get(0).getMeal(), probe);
+                        if (r.nextInt(8) == 0) {
+                            String id = mine.remove(r.nextInt(mine.size()));
+                            expected.remove(id);
+                            service.closeSession(id);
+                            assertNull(service.getSession(id), id);
+                        }
+                        if (r.nextInt(4) == 0) {
+                            empty.add(service.openSession().getId());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        sweeper.start();
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        done.set(true);
+        sweeper.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        checkSessions(expected);
+        assertEquals(expected.size() + empty.size(), service.getSessionCount());
+    }
+
+    private void checkSessions(Map<String, Integer> expected) {
+        for (Map.Entry<String, Integer> e : expected.entrySet()) {
+            OrderService.Session session = service.getSession(e.getKey());
+            assertNotNull(session, e.getKey());
+            assertEquals(1, session.getLines().size(), e.getKey());
+            assertSame(menu.get(e.getValue()), session.getLines().get(0).getMeal(), e.getKey());
+        }
+    }
+
+    private static void assertSameLines(List<CartLine> expected, List<CartLine> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i).getMeal(), actual.get(i).getMeal());
+            assertEquals(expected.get(i).getQuantity(), actual.get(i).getQuantity());
+        }
+    }
+}